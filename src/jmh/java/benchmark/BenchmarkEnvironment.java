@@ -0,0 +1,140 @@
+package benchmark;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utilities.ReadConfigFile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A stub Publisher together with a working directory holding the configuration, tenants and revisions files that
+ * point the redeployer at it. The configuration is picked up through the {@code redeployer.config} system property,
+ * so it must be started before anything in the JVM reads the configuration.
+ */
+public final class BenchmarkEnvironment implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BenchmarkEnvironment.class);
+
+    private static final String TRUSTSTORE_PASSWORD = "benchmark";
+
+    private final StubPublisher publisher;
+    private final Path directory;
+
+    private BenchmarkEnvironment(StubPublisher publisher, Path directory) {
+        this.publisher = publisher;
+        this.directory = directory;
+    }
+
+    /**
+     * Starts a stub Publisher and writes a configuration for the given number of tenants. The overrides replace or
+     * add configuration properties, e.g. {@code TENANT.PARALLELISM}.
+     */
+    public static BenchmarkEnvironment start(StubPublisher.Options options, int tenants,
+                                             Map<String, String> overrides) throws IOException {
+        StubPublisher publisher = StubPublisher.start(options);
+        try {
+            Path directory = Files.createTempDirectory("redeployer-benchmark");
+            writeFiles(directory, publisher, tenants, overrides);
+            System.setProperty(ReadConfigFile.CONFIG_FILE_PROPERTY, directory.resolve("config.properties").toString());
+            // Per-API info logs would make the benchmarks measure the log appenders
+            ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+            return new BenchmarkEnvironment(publisher, directory);
+        } catch (IOException | RuntimeException e) {
+            publisher.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the configuration, tenants, revisions and truststore files for a stub Publisher to a directory.
+     */
+    static void writeFiles(Path directory, StubPublisher publisher, int tenants, Map<String, String> overrides)
+            throws IOException {
+        Files.createDirectories(directory);
+        Path truststore = directory.resolve("truststore.jks");
+        writeTruststore(truststore);
+
+        StringBuilder tenantsJson = new StringBuilder("{");
+        for (int i = 0; i < tenants; i++) {
+            tenantsJson.append(i > 0 ? "," : "").append("\"tenant").append(i).append(".com\":{\"consumerKey\":")
+                    .append("\"tenant").append(i).append("\",\"consumerSecret\":\"secret\"}");
+        }
+        Files.write(directory.resolve("tenants.json"), tenantsJson.append('}').toString()
+                .getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("revisions.json"),
+                "[{\"name\": \"External\", \"displayOnDevportal\": false}]".getBytes(StandardCharsets.UTF_8));
+
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("TRUSTSTORE.PATH", truststore.toString());
+        properties.put("TRUSTSTORE.PASSWORD", TRUSTSTORE_PASSWORD);
+        properties.put("RESIDENTKM.TOKEN.URL", publisher.getTokenUrl());
+        properties.put("PUBLISHER.REST.URL", publisher.getPublisherUrl());
+        properties.put("REVISION.DESCRIPTION", "Benchmark revision");
+        properties.put("API.LIST.LIMIT", "200");
+        properties.put("API.LIST.OFFSET", "0");
+        properties.put("API.LIST.SORTBY", "apiName");
+        properties.put("API.LIST.ORDERBY", "asc");
+        properties.put("TENANT.PARALLELISM", "4");
+        properties.put("HTTP.POOL.SIZE", "20");
+        properties.put("HTTP.POOL.STATS.INTERVAL.SECONDS", "0");
+        properties.put("GOVERNOR.MAX.CONCURRENCY", "20");
+        properties.put("RETRY.BASE.DELAY.MS", "10");
+        properties.put("RETRY.MAX.DELAY.MS", "100");
+        properties.put("JSON.FILE.PATH", directory.resolve("tenants.json").toString());
+        properties.put("REVISIONLIST.FILE.PATH", directory.resolve("revisions.json").toString());
+        properties.put("CHECKPOINT.JOURNAL.PATH", directory.resolve("checkpoint.journal").toString());
+        properties.put("STATE.INDEX.PATH", directory.resolve("state.index").toString());
+        properties.put("SHARD.REPORT.DIR", directory.resolve("reports").toString());
+        properties.put("METRICS.PROMETHEUS.FILE", directory.resolve("metrics/redeployer.prom").toString());
+        properties.put("METRICS.SUMMARY.FILE", directory.resolve("metrics/summary.json").toString());
+        properties.putAll(overrides);
+
+        try (Writer writer = Files.newBufferedWriter(directory.resolve("config.properties"), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                // Backslashes of Windows paths would be read as escapes
+                writer.write(property.getKey() + " = " + property.getValue().replace("\\", "/") + "\n");
+            }
+        }
+    }
+
+    private static void writeTruststore(Path path) throws IOException {
+        // The stub is served over plain HTTP, but the client always loads a truststore
+        try (OutputStream out = Files.newOutputStream(path)) {
+            KeyStore keyStore = KeyStore.getInstance("jks");
+            keyStore.load(null, null);
+            keyStore.store(out, TRUSTSTORE_PASSWORD.toCharArray());
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to create the truststore " + path, e);
+        }
+    }
+
+    public StubPublisher getPublisher() {
+        return publisher;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void close() {
+        publisher.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            logger.warn("Unable to delete the benchmark directory {}: {}", directory, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package benchmark;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import utilities.ApiRevision;
+import utilities.GatewayDeployment;
+import utilities.RestRequests;
+import utilities.UndeploySpec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the client-side cost of each Publisher call of a redeployment against the stub Publisher, which answers
+ * without delay unless a latency is given. Run with {@code -t} to measure the calls under contention for the
+ * connection pool. Compressed responses only pay off when the transfer time outweighs the cost of decoding them,
+ * which the loopback interface never shows; give a latency to compare them over a slower link.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PublisherCallBenchmark {
+
+    private static final String API_ID = "tenant0-api-0";
+
+    @Param({"0"})
+    public long latencyMs;
+
+    @Param({"0", "4096"})
+    public int paddingBytes;
+
+    @Param({"3"})
+    public int revisionsPerApi;
+
+    @Param({"true", "false"})
+    public boolean compression;
+
+    private BenchmarkEnvironment environment;
+    private String tokenUrl;
+    private String publisherUrl;
+    private String accessToken;
+    private UndeploySpec undeploySpec;
+    private List<GatewayDeployment> deployments;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        environment = BenchmarkEnvironment.start(new StubPublisher.Options()
+                .apisPerTenant(200)
+                .revisionsPerApi(revisionsPerApi)
+                .paddingBytes(paddingBytes)
+                .latency(latencyMs, 0), 1, Collections.singletonMap("HTTP.COMPRESSION", String.valueOf(compression)));
+        tokenUrl = environment.getPublisher().getTokenUrl();
+        publisherUrl = environment.getPublisher().getPublisherUrl();
+        accessToken = (String) RestRequests.getToken(tokenUrl, "tenant0", "secret").get("access_token");
+        undeploySpec = UndeploySpec.load(environment.getDirectory().resolve("revisions.json").toString());
+        deployments = new ArrayList<>();
+        for (ApiRevision revision : RestRequests.getRevisionDetails(publisherUrl, accessToken, API_ID)) {
+            deployments.addAll(revision.getDeployments());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        environment.close();
+    }
+
+    @Benchmark
+    public JSONObject getToken() {
+        return RestRequests.getToken(tokenUrl, "tenant0", "secret");
+    }
+
+    @Benchmark
+    public JSONObject getApiListPage() {
+        return RestRequests.getAPIListPage(publisherUrl, accessToken, "200", "0", "apiName", "asc");
+    }
+
+    @Benchmark
+    public List<ApiRevision> getRevisionDetails() {
+        return RestRequests.getRevisionDetails(publisherUrl, accessToken, API_ID);
+    }
+
+    @Benchmark
+    public JSONArray undeployRevision() throws IOException, ParseException {
+        return RestRequests.undeployRevisions(publisherUrl, undeploySpec, accessToken, API_ID, API_ID + "-rev-1");
+    }
+
+    @Benchmark
+    public JSONObject createRevision() {
+        return RestRequests.createRevision(publisherUrl, accessToken, API_ID, "Benchmark revision");
+    }
+
+    @Benchmark
+    public List<JSONObject> deployRevision() {
+        return RestRequests.deployRevision(publisherUrl, accessToken, API_ID, deployments, API_ID + "-rev-1");
+    }
+}
@@ -0,0 +1,102 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs complete redeployments of all tenants against the stub Publisher. The score is in runs per second, and the
+ * {@code apis} counter gives the APIs redeployed per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class RedeploymentBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Publisher {
+
+        @Param({"4"})
+        public int tenants;
+
+        @Param({"250"})
+        public int apisPerTenant;
+
+        @Param({"0", "20"})
+        public long latencyMs;
+
+        @Param({"0", "0.01"})
+        public double errorRate;
+
+        @Param({"4"})
+        public int tenantParallelism;
+
+        @Param({"20"})
+        public int poolSize;
+
+        BenchmarkEnvironment environment;
+        MethodHandle main;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            Map<String, String> overrides = new HashMap<>();
+            overrides.put("TENANT.PARALLELISM", String.valueOf(tenantParallelism));
+            overrides.put("HTTP.POOL.SIZE", String.valueOf(poolSize));
+            overrides.put("HTTP.ROUTE.PUBLISHER.MAX", String.valueOf(poolSize));
+            overrides.put("GOVERNOR.MAX.CONCURRENCY", String.valueOf(poolSize));
+            environment = BenchmarkEnvironment.start(new StubPublisher.Options()
+                    .apisPerTenant(apisPerTenant)
+                    .latency(latencyMs, latencyMs / 4)
+                    .errorRate(errorRate), tenants, overrides);
+            // The entry point lives in the default package, which can't be imported
+            main = MethodHandles.publicLookup().findStatic(Class.forName("DeploymentService"), "main",
+                    MethodType.methodType(void.class, String[].class));
+        }
+
+        long deployedRevisions() {
+            StubPublisher stub = environment.getPublisher();
+            return stub.getRequestCount("deployRevision") - stub.getRequestCount("deployRevision.failed");
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            environment.close();
+        }
+    }
+
+    /**
+     * APIs redeployed, reported by JMH as a rate per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Redeployed {
+        public long apis;
+    }
+
+    @Benchmark
+    public void redeployAllTenants(Publisher publisher, Redeployed redeployed) throws Throwable {
+        long before = publisher.deployedRevisions();
+        publisher.main.invokeExact(new String[0]);
+        redeployed.apis += publisher.deployedRevisions() - before;
+    }
+}
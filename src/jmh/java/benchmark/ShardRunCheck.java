@@ -0,0 +1,164 @@
+package benchmark;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utilities.ReadConfigFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks a sharded run end to end: starts a stub Publisher, runs N runner processes with {@code --shard i/N} and the
+ * same run ID against it, merges their reports with {@code --merge-reports}, and checks that every API was
+ * redeployed exactly once and that the merged report covers every work unit and API. The first tenant is split by
+ * API and the runners share a lease directory, so both kinds of work units and the takeover of unstarted units are
+ * exercised. Exits with status 1 if a check fails.
+ *
+ * <p>Options: {@code --shards}, {@code --tenants}, {@code --apis}, {@code --latency-ms}, {@code --timeout-seconds},
+ * {@code --dir}.</p>
+ */
+public final class ShardRunCheck {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardRunCheck.class);
+
+    private static final String RUN_ID = "shard-run-check";
+
+    private ShardRunCheck() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> arguments = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            arguments.put(args[i], args[i + 1]);
+        }
+        int shards = Integer.parseInt(arguments.getOrDefault("--shards", "3"));
+        int tenants = Integer.parseInt(arguments.getOrDefault("--tenants", "5"));
+        int apis = Integer.parseInt(arguments.getOrDefault("--apis", "50"));
+        long timeoutSeconds = Long.parseLong(arguments.getOrDefault("--timeout-seconds", "300"));
+        Path directory = arguments.containsKey("--dir") ? Paths.get(arguments.get("--dir")).toAbsolutePath()
+                : Files.createTempDirectory("shard-run-check");
+
+        StubPublisher.Options options = new StubPublisher.Options()
+                .apisPerTenant(apis)
+                .latency(Long.parseLong(arguments.getOrDefault("--latency-ms", "5")), 0);
+        List<String> failures;
+        try (StubPublisher publisher = StubPublisher.start(options)) {
+            Map<String, String> overrides = new HashMap<>();
+            overrides.put("SHARD.SPLIT.TENANTS", "tenant0.com");
+            overrides.put("SHARD.LEASE.DIR", directory.resolve("leases").toString());
+            BenchmarkEnvironment.writeFiles(directory, publisher, tenants, overrides);
+            Path config = directory.resolve("config.properties");
+
+            List<Process> runners = new ArrayList<>();
+            for (int shard = 0; shard < shards; shard++) {
+                runners.add(startRedeployer(config, directory.resolve("shard-" + shard + ".log"),
+                        "--shard", shard + "/" + shards, "--run-id", RUN_ID));
+            }
+            failures = new ArrayList<>();
+            for (int shard = 0; shard < shards; shard++) {
+                if (!awaitExit(runners.get(shard), timeoutSeconds)) {
+                    failures.add("Runner " + shard + "/" + shards + " did not finish, see " +
+                            directory.resolve("shard-" + shard + ".log"));
+                }
+            }
+            if (!awaitExit(startRedeployer(config, directory.resolve("merge.log"), "--merge-reports",
+                    "--run-id", RUN_ID), timeoutSeconds)) {
+                failures.add("Merging the shard reports did not finish, see " + directory.resolve("merge.log"));
+            }
+
+            failures.addAll(checkDeployments(publisher.getDeploymentCounts(), tenants, apis));
+            failures.addAll(checkMergedReport(directory.resolve("reports").resolve(RUN_ID)
+                    .resolve("merged-report.json"), tenants, apis));
+        }
+
+        if (failures.isEmpty()) {
+            logger.warn("All {} APIs of {} tenants were redeployed exactly once by {} runners", tenants * apis,
+                    tenants, shards);
+        } else {
+            failures.forEach(failure -> logger.error("{}", failure));
+            logger.error("Runner logs and reports are in {}", directory);
+            System.exit(1);
+        }
+    }
+
+    private static Process startRedeployer(Path config, Path log, String... args) throws IOException {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-D" + ReadConfigFile.CONFIG_FILE_PROPERTY + "=" + config,
+                "-cp", System.getProperty("java.class.path"),
+                "DeploymentService"));
+        command.addAll(Arrays.asList(args));
+        File logFile = log.toFile();
+        return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(logFile).start();
+    }
+
+    private static boolean awaitExit(Process process, long timeoutSeconds) throws InterruptedException {
+        if (process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+            return true;
+        }
+        process.destroyForcibly();
+        return false;
+    }
+
+    private static List<String> checkDeployments(Map<String, Long> deployments, int tenants, int apis) {
+        List<String> failures = new ArrayList<>();
+        for (int tenant = 0; tenant < tenants; tenant++) {
+            for (int api = 0; api < apis; api++) {
+                String apiId = "tenant" + tenant + "-api-" + api;
+                long count = deployments.getOrDefault(apiId, 0L);
+                if (count != 1) {
+                    failures.add("API " + apiId + " was deployed " + count + " times");
+                }
+            }
+        }
+        if (deployments.size() != tenants * apis) {
+            failures.add("Revisions were deployed to " + deployments.size() + " APIs instead of " + tenants * apis);
+        }
+        return failures;
+    }
+
+    private static List<String> checkMergedReport(Path file, int tenants, int apis) {
+        List<String> failures = new ArrayList<>();
+        JSONObject report;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            report = (JSONObject) new JSONParser().parse(reader);
+        } catch (IOException | ParseException | ClassCastException e) {
+            failures.add("Unable to read the merged report " + file + ": " + e.getMessage());
+            return failures;
+        }
+        JSONArray missing = (JSONArray) report.get("missingUnits");
+        if (!missing.isEmpty()) {
+            failures.add("No runner reported the work units " + missing);
+        }
+        JSONArray tenantReports = (JSONArray) report.get("tenants");
+        if (tenantReports.size() != tenants) {
+            failures.add("The merged report has " + tenantReports.size() + " tenants instead of " + tenants);
+        }
+        for (Object entry : tenantReports) {
+            JSONObject tenant = (JSONObject) entry;
+            // A unit reported by two runners would count its APIs twice
+            if (((Number) tenant.get("apis")).longValue() != apis
+                    || ((Number) tenant.get("redeployed")).longValue() != apis) {
+                failures.add("Tenant " + tenant.get("tenant") + " reports " + tenant.get("apis") + " APIs and " +
+                        tenant.get("redeployed") + " redeployed instead of " + apis);
+            }
+        }
+        return failures;
+    }
+}
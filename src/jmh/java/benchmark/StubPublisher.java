@@ -0,0 +1,513 @@
+package benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An in-process stand-in for the token endpoint and the Publisher REST API of API Manager, serving just enough of
+ * the API list and revision endpoints for a complete redeployment. Every API has a number of revisions, the latest
+ * of which is deployed to the {@code Default} and {@code External} gateway environments.
+ *
+ * <p>The stub keeps no state between requests, so every run finds the same deployments to redeploy. Response sizes,
+ * latency, compression and the rate of failed Publisher calls are configurable through {@link Options}. To follow
+ * deployments after they are made, the stub can remember the last revision deployed to every API and list its
+ * deployments as pending until they become active.</p>
+ */
+public class StubPublisher implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StubPublisher.class);
+
+    public static final String TOKEN_PATH = "/oauth2/token";
+    public static final String PUBLISHER_PATH = "/api/am/publisher/v4/apis";
+
+    private static final String TOKEN_PREFIX = "stub-";
+    // Smaller responses are not compressed, as by the default compressionMinSize of the Tomcat connector of APIM
+    private static final int COMPRESSION_MIN_BYTES = 2048;
+
+    /**
+     * Shape and behaviour of the stubbed Publisher.
+     */
+    public static final class Options {
+        int port;
+        int apisPerTenant = 100;
+        int revisionsPerApi = 3;
+        int paddingBytes = 0;
+        long latencyMs = 0;
+        long jitterMs = 0;
+        double errorRate = 0;
+        int threads = 64;
+        boolean compression = true;
+        long activationDelayMs = -1;
+        double inactiveRate = 0;
+
+        public Options port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Options apisPerTenant(int apisPerTenant) {
+            this.apisPerTenant = apisPerTenant;
+            return this;
+        }
+
+        public Options revisionsPerApi(int revisionsPerApi) {
+            this.revisionsPerApi = revisionsPerApi;
+            return this;
+        }
+
+        /**
+         * Size of the filler description added to every API and revision, to mimic large responses.
+         */
+        public Options paddingBytes(int paddingBytes) {
+            this.paddingBytes = paddingBytes;
+            return this;
+        }
+
+        public Options latency(long latencyMs, long jitterMs) {
+            this.latencyMs = latencyMs;
+            this.jitterMs = jitterMs;
+            return this;
+        }
+
+        /**
+         * Fraction of the Publisher calls answered with 503 Service Unavailable, between 0 and 1.
+         */
+        public Options errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        public Options threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Whether responses are gzip compressed for clients that accept it.
+         */
+        public Options compression(boolean compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * Remembers the revisions deployed to every API. Their deployments are listed as pending until the delay has
+         * passed, and the given fraction of them never becomes active, like gateways that miss an artifact sync.
+         */
+        public Options activation(long delayMs, double inactiveRate) {
+            this.activationDelayMs = delayMs;
+            this.inactiveRate = inactiveRate;
+            return this;
+        }
+    }
+
+    private final Options options;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String padding;
+    private final AtomicLong revisionSequence = new AtomicLong();
+    private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+    private final Map<String, DeployedRevision> deployedRevisions = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> apiDeployments = new ConcurrentHashMap<>();
+
+    /**
+     * The last revision deployed to an API, remembered when the stub follows deployments.
+     */
+    private static final class DeployedRevision {
+        final String revisionId;
+        final String deployments;
+        final long activeAt;
+
+        DeployedRevision(String revisionId, String deployments, long activeAt) {
+            this.revisionId = revisionId;
+            this.deployments = deployments;
+            this.activeAt = activeAt;
+        }
+    }
+
+    private StubPublisher(Options options) throws IOException {
+        this.options = options;
+        this.padding = padding(options.paddingBytes);
+        // Without this the server writes each response in two segments and every call waits for a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), options.port), 1024);
+        this.executor = Executors.newFixedThreadPool(options.threads);
+        server.setExecutor(executor);
+        server.createContext(TOKEN_PATH, this::handleToken);
+        server.createContext(PUBLISHER_PATH, this::handlePublisher);
+    }
+
+    public static StubPublisher start(Options options) throws IOException {
+        StubPublisher publisher = new StubPublisher(options);
+        publisher.server.start();
+        return publisher;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getTokenUrl() {
+        return "http://127.0.0.1:" + getPort() + TOKEN_PATH;
+    }
+
+    public String getPublisherUrl() {
+        return "http://127.0.0.1:" + getPort() + PUBLISHER_PATH;
+    }
+
+    /**
+     * Returns the number of requests served for an operation, e.g. {@code deployRevision}.
+     */
+    public long getRequestCount(String operation) {
+        LongAdder count = requestCounts.get(operation);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Returns the number of revisions deployed to every API that had any, by API ID.
+     */
+    public Map<String, Long> getDeploymentCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        apiDeployments.forEach((apiId, count) -> counts.put(apiId, count.sum()));
+        return counts;
+    }
+
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        requestCounts.forEach((operation, count) -> counts.put(operation, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handleToken(HttpExchange exchange) throws IOException {
+        try {
+            drain(exchange);
+            count("getToken");
+            String clientId = basicAuthUser(exchange.getRequestHeaders().getFirst("Authorization"));
+            if (clientId == null) {
+                respond(exchange, 401, "{\"error\":\"invalid_client\"}");
+                return;
+            }
+            pause();
+            respond(exchange, 200, "{\"access_token\":\"" + TOKEN_PREFIX + clientId + "-" +
+                    System.nanoTime() + "\",\"scope\":\"apim:api_view apim:api_manage\",\"token_type\":\"Bearer\"," +
+                    "\"expires_in\":3600}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handlePublisher(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = drain(exchange);
+            String operation = operation(exchange);
+            count(operation);
+            String tenant = bearerTenant(exchange.getRequestHeaders().getFirst("Authorization"));
+            if (tenant == null) {
+                respond(exchange, 401, "{\"code\":900901,\"message\":\"Invalid Credentials\"}");
+                return;
+            }
+            pause();
+            if (options.errorRate > 0 && ThreadLocalRandom.current().nextDouble() < options.errorRate) {
+                count(operation + ".failed");
+                respond(exchange, 503, "{\"code\":503,\"message\":\"Injected failure\"}");
+                return;
+            }
+            String[] path = subPath(exchange.getRequestURI());
+            Map<String, String> query = query(exchange.getRequestURI());
+            switch (operation) {
+                case "getAPIList":
+                    respond(exchange, 200, apiListJson(tenant, options.apisPerTenant,
+                            intValue(query.get("offset"), 0), intValue(query.get("limit"), 25), padding));
+                    break;
+                case "getRevisionDetails":
+                    DeployedRevision deployed = deployedRevisions.get(path[0]);
+                    respond(exchange, 200, deployed != null ? deployedRevisionJson(path[0], deployed)
+                            : revisionListJson(path[0], options.revisionsPerApi, padding));
+                    break;
+                case "createRevision":
+                    respond(exchange, 201, "{\"id\":\"" + path[0] + "-rev-" + revisionSequence.incrementAndGet() +
+                            "\",\"displayName\":\"Revision\",\"description\":\"" + padding + "\"}");
+                    break;
+                case "undeployRevisions":
+                    respond(exchange, 201, "[]");
+                    break;
+                case "deployRevision":
+                    // The Publisher answers with the deployments it accepted, which are those of the request
+                    String deployments = new String(body, StandardCharsets.UTF_8);
+                    apiDeployments.computeIfAbsent(path[0], key -> new LongAdder()).increment();
+                    if (options.activationDelayMs >= 0 && query.get("revisionId") != null) {
+                        boolean neverActive = ThreadLocalRandom.current().nextDouble() < options.inactiveRate;
+                        deployedRevisions.put(path[0], new DeployedRevision(query.get("revisionId"), deployments,
+                                neverActive ? Long.MAX_VALUE : System.currentTimeMillis() + options.activationDelayMs));
+                    }
+                    respond(exchange, 201, deployments);
+                    break;
+                case "deleteRevision":
+                    respond(exchange, 200, "{\"count\":0,\"list\":[]}");
+                    break;
+                default:
+                    respond(exchange, 404, "{\"code\":404,\"message\":\"Not found\"}");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String operation(HttpExchange exchange) {
+        String method = exchange.getRequestMethod();
+        String[] path = subPath(exchange.getRequestURI());
+        if (path.length == 0) {
+            return "GET".equals(method) ? "getAPIList" : "unknown";
+        }
+        if (path.length == 2 && "revisions".equals(path[1])) {
+            return "GET".equals(method) ? "getRevisionDetails" : "POST".equals(method) ? "createRevision" : "unknown";
+        }
+        if (path.length == 3 && "revisions".equals(path[1]) && "DELETE".equals(method)) {
+            return "deleteRevision";
+        }
+        if (path.length == 2 && "POST".equals(method)) {
+            if ("undeploy-revision".equals(path[1])) {
+                return "undeployRevisions";
+            }
+            if ("deploy-revision".equals(path[1])) {
+                return "deployRevision";
+            }
+        }
+        return "unknown";
+    }
+
+    /**
+     * Builds a page of the API list of a tenant.
+     */
+    public static String apiListJson(String tenant, int total, int offset, int limit, String padding) {
+        int end = Math.min(total, offset + limit);
+        StringBuilder json = new StringBuilder(256 + Math.max(0, end - offset) * (192 + padding.length()));
+        json.append("{\"count\":").append(Math.max(0, end - offset)).append(",\"list\":[");
+        for (int i = offset; i < end; i++) {
+            if (i > offset) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(tenant).append("-api-").append(i)
+                    .append("\",\"name\":\"Api").append(i)
+                    .append("\",\"description\":\"").append(padding)
+                    .append("\",\"context\":\"/t/").append(tenant).append("/api").append(i)
+                    .append("\",\"version\":\"1.0.0\",\"provider\":\"admin\",\"type\":\"HTTP\"")
+                    .append(",\"lifeCycleStatus\":\"PUBLISHED\",\"tags\":[\"stub\"]")
+                    .append(",\"updatedTime\":\"").append(1700000000000L + i).append("\"}");
+        }
+        json.append("],\"pagination\":{\"offset\":").append(offset).append(",\"limit\":").append(limit)
+                .append(",\"total\":").append(total).append(",\"next\":\"");
+        if (end < total) {
+            json.append("/apis?limit=").append(limit).append("&offset=").append(end);
+        }
+        json.append("\",\"previous\":\"\"}}");
+        return json.toString();
+    }
+
+    /**
+     * Builds the revision list of an API. The latest revision is deployed to two gateway environments.
+     */
+    public static String revisionListJson(String apiId, int revisions, String padding) {
+        StringBuilder json = new StringBuilder(128 + revisions * (320 + padding.length()));
+        json.append("{\"count\":").append(revisions).append(",\"list\":[");
+        for (int i = 1; i <= revisions; i++) {
+            if (i > 1) {
+                json.append(',');
+            }
+            json.append("{\"displayName\":\"Revision ").append(i)
+                    .append("\",\"id\":\"").append(apiId).append("-rev-").append(i)
+                    .append("\",\"description\":\"").append(padding)
+                    .append("\",\"createdTime\":").append(1700000000000L + i)
+                    .append(",\"apiInfo\":{\"id\":\"").append(apiId).append("\"},\"deploymentInfo\":[");
+            if (i == revisions) {
+                json.append("{\"revisionUuid\":\"").append(apiId).append("-rev-").append(i)
+                        .append("\",\"name\":\"Default\",\"vhost\":\"localhost\",\"displayOnDevportal\":true,")
+                        .append("\"deployedTime\":1700000000000,\"successDeployedTime\":1700000000000},")
+                        .append("{\"revisionUuid\":\"").append(apiId).append("-rev-").append(i)
+                        .append("\",\"name\":\"External\",\"vhost\":\"api.example.com\",\"displayOnDevportal\":")
+                        .append("false,\"deployedTime\":1700000000000,\"successDeployedTime\":1700000000000}");
+            }
+            json.append("]}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * Builds the revision list of an API holding only its last deployed revision, whose deployments have no sync
+     * time until they are active.
+     */
+    private String deployedRevisionJson(String apiId, DeployedRevision deployed) {
+        String syncTime = System.currentTimeMillis() >= deployed.activeAt ? String.valueOf(deployed.activeAt) : "null";
+        String deployments = deployed.deployments.trim();
+        // The deployments of the request are listed with their sync time, e.g. {"name":"Default",...}
+        deployments = deployments.substring(1, deployments.length() - 1)
+                .replace("}", ",\"status\":\"APPROVED\",\"deployedTime\":1700000000000,\"successDeployedTime\":"
+                        + syncTime + "}");
+        return "{\"count\":1,\"list\":[{\"displayName\":\"Revision\",\"id\":\"" + deployed.revisionId +
+                "\",\"description\":\"" + padding + "\",\"createdTime\":1700000000000,\"apiInfo\":{\"id\":\"" +
+                apiId + "\"},\"deploymentInfo\":[" + deployments + "]}]}";
+    }
+
+    public static String padding(int bytes) {
+        StringBuilder padding = new StringBuilder(bytes);
+        for (int i = 0; i < bytes; i++) {
+            padding.append((char) ('a' + i % 26));
+        }
+        return padding.toString();
+    }
+
+    private void pause() {
+        long delay = options.latencyMs;
+        if (options.jitterMs > 0) {
+            delay += ThreadLocalRandom.current().nextLong(options.jitterMs + 1);
+        }
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void count(String operation) {
+        requestCounts.computeIfAbsent(operation, key -> new LongAdder()).increment();
+    }
+
+    private static String[] subPath(URI uri) {
+        String path = uri.getPath().substring(PUBLISHER_PATH.length());
+        return path.isEmpty() || "/".equals(path) ? new String[0] : path.substring(1).split("/");
+    }
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> query = new HashMap<>();
+        if (uri.getRawQuery() != null) {
+            for (String parameter : uri.getRawQuery().split("&")) {
+                int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    query.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+                }
+            }
+        }
+        return query;
+    }
+
+    private static int intValue(String value, int defaultValue) {
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static String basicAuthUser(String authorization) {
+        if (authorization == null || !authorization.startsWith("Basic ")) {
+            return null;
+        }
+        String credentials = new String(Base64.getDecoder().decode(authorization.substring(6).trim()),
+                StandardCharsets.UTF_8);
+        int separator = credentials.indexOf(':');
+        return separator > 0 ? credentials.substring(0, separator) : null;
+    }
+
+    private static String bearerTenant(String authorization) {
+        if (authorization == null || !authorization.startsWith("Bearer " + TOKEN_PREFIX)) {
+            return null;
+        }
+        String token = authorization.substring(7 + TOKEN_PREFIX.length());
+        int separator = token.lastIndexOf('-');
+        return separator > 0 ? token.substring(0, separator) : token;
+    }
+
+    private static byte[] drain(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            return body.readAllBytes();
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (options.compression && bytes.length >= COMPRESSION_MIN_BYTES && acceptEncoding != null
+                && acceptEncoding.contains("gzip")) {
+            // Compressed responses are chunked, as their length isn't known upfront
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(status, 0);
+            try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody(), 8192)) {
+                out.write(bytes);
+            }
+            return;
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Runs the stub on its own, writing a matching configuration to a directory so the redeployer can be pointed
+     * at it with {@code -Dredeployer.config=<dir>/config.properties}.
+     *
+     * <p>Options: {@code --port}, {@code --tenants}, {@code --apis}, {@code --revisions}, {@code --padding-bytes},
+     * {@code --latency-ms}, {@code --jitter-ms}, {@code --error-rate}, {@code --compression},
+     * {@code --activation-delay-ms}, {@code --inactive-rate}, {@code --dir}.</p>
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> arguments = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            arguments.put(args[i], args[i + 1]);
+        }
+        Options options = new Options()
+                .port(Integer.parseInt(arguments.getOrDefault("--port", "9443")))
+                .apisPerTenant(Integer.parseInt(arguments.getOrDefault("--apis", "100")))
+                .revisionsPerApi(Integer.parseInt(arguments.getOrDefault("--revisions", "3")))
+                .paddingBytes(Integer.parseInt(arguments.getOrDefault("--padding-bytes", "0")))
+                .latency(Long.parseLong(arguments.getOrDefault("--latency-ms", "0")),
+                        Long.parseLong(arguments.getOrDefault("--jitter-ms", "0")))
+                .errorRate(Double.parseDouble(arguments.getOrDefault("--error-rate", "0")))
+                .compression(Boolean.parseBoolean(arguments.getOrDefault("--compression", "true")))
+                .activation(Long.parseLong(arguments.getOrDefault("--activation-delay-ms", "-1")),
+                        Double.parseDouble(arguments.getOrDefault("--inactive-rate", "0")));
+        int tenants = Integer.parseInt(arguments.getOrDefault("--tenants", "4"));
+
+        StubPublisher publisher = start(options);
+        Path directory = Paths.get(arguments.getOrDefault("--dir", "stub-publisher")).toAbsolutePath();
+        BenchmarkEnvironment.writeFiles(directory, publisher, tenants, new HashMap<>());
+        logger.info("Stub Publisher listening on {} with {} tenants of {} APIs, configuration written to {}",
+                publisher.getPublisherUrl(), tenants, options.apisPerTenant, directory.resolve("config.properties"));
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+                logger.info("Requests served: {}", publisher.getRequestCounts())));
+        Thread.currentThread().join();
+    }
+}
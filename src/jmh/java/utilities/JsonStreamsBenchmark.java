@@ -0,0 +1,86 @@
+package utilities;
+
+import benchmark.StubPublisher;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the JSON decoding and encoding done for every API: reading the deployments from the revision list,
+ * building the deploy-revision payload and reading a page of the API list. The revision list is also parsed into a
+ * json-simple tree as a baseline for the streaming decode.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonStreamsBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int revisions;
+
+    @Param({"0", "4096"})
+    public int paddingBytes;
+
+    private byte[] revisionList;
+    private byte[] apiListPage;
+    private List<GatewayDeployment> deployments;
+
+    @Setup(Level.Trial)
+    public void prepare() throws IOException, ParseException {
+        String padding = StubPublisher.padding(paddingBytes);
+        revisionList = StubPublisher.revisionListJson("api-0", revisions, padding).getBytes(StandardCharsets.UTF_8);
+        apiListPage = StubPublisher.apiListJson("tenant0.com", 200, 0, 200, padding).getBytes(StandardCharsets.UTF_8);
+        deployments = new ArrayList<>();
+        for (ApiRevision revision : JsonStreams.readRevisionList(entity(revisionList))) {
+            deployments.addAll(revision.getDeployments());
+        }
+    }
+
+    private static HttpEntity entity(byte[] content) {
+        return new ByteArrayEntity(content, ContentType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public List<ApiRevision> readRevisionList() throws IOException, ParseException {
+        return JsonStreams.readRevisionList(entity(revisionList));
+    }
+
+    @Benchmark
+    public Object parseRevisionListTree() throws ParseException {
+        return new JSONParser().parse(new String(revisionList, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public byte[] writeDeployPayload() {
+        return JsonStreams.writeDeployPayload("api-0-rev-1", deployments);
+    }
+
+    @Benchmark
+    public JSONObject readApiListPage() throws IOException, ParseException {
+        return JsonStreams.readApiListPage(entity(apiListPage));
+    }
+}
@@ -0,0 +1,74 @@
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utilities.ApiEventLog;
+import utilities.ApiRevision;
+import utilities.RestRequests;
+import utilities.TokenManager;
+
+import java.util.List;
+
+/**
+ * Plans the redeployment of a single API without changing it. The revisions of the API are read and the resulting
+ * {@link RedeployPlan} is written to the plan file, to be carried out later with {@code --execute}.
+ */
+public class ApiPlanningTask implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApiPlanningTask.class);
+
+    private final TokenManager tokens;
+    private final JSONObject apiDetails;
+    private final TenantRedeploymentResult result;
+    private final RedeployPlanFile.Writer planWriter;
+
+    public ApiPlanningTask(TokenManager tokens, JSONObject apiDetails, TenantRedeploymentResult result,
+                           RedeployPlanFile.Writer planWriter) {
+        this.tokens = tokens;
+        this.apiDetails = apiDetails;
+        this.result = result;
+        this.planWriter = planWriter;
+    }
+
+    @Override
+    public void run() {
+        String apiId = (String) apiDetails.get("id");
+        String apiName = (String) apiDetails.get("name");
+        long start = System.nanoTime();
+        try {
+            // With pruning enabled all revisions are listed, so the plan also holds the revisions to delete
+            List<ApiRevision> revisions = tokens.call(token -> RestRequests.getRevisionDetails(
+                    DeploymentService.publisherRestUrl, token, apiId, !DeploymentService.pruneRevisions));
+            if (revisions == null) {
+                // Unlike a redeployment, a plan that silently lacks an API would go unnoticed
+                logger.error("Failed to read the revisions of API: {} with ID: {}", apiName, apiId);
+                ApiEventLog.failed(result.getTenant(), apiId, "read", null, start);
+                result.apiFailed();
+                return;
+            }
+            if (revisions.stream().noneMatch(ApiRevision::isDeployed)) {
+                logger.warn("No deployed revisions found for API: {} with ID: {}", apiName, apiId);
+                result.apiSkipped();
+                return;
+            }
+            if (!DeploymentService.apiSelector.matchesDeployments(revisions)) {
+                ApiEventLog.step(result.getTenant(), apiId, "not-selected", null, start);
+                result.apiNotSelected();
+                return;
+            }
+            RedeployPlan plan = RedeployPlan.build(revisions, DeploymentService.undeploySpec);
+            if (plan.getRemainingDeployments().isEmpty()) {
+                logger.warn("No gateway environments remain to deploy a new revision of API: {} with ID: {}",
+                        apiName, apiId);
+                result.apiSkipped();
+                return;
+            }
+            planWriter.write(result.getTenant(), apiDetails, plan);
+            ApiEventLog.step(result.getTenant(), apiId, "planned", null, start);
+            result.apiRedeployed();
+        } catch (Exception e) {
+            logger.error("Unexpected error while planning API: {} with ID: {} in the tenant {}: {}", apiName, apiId,
+                    result.getTenant(), e.getMessage(), e);
+            result.apiFailed();
+        }
+    }
+}
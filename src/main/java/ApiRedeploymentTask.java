@@ -0,0 +1,247 @@
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utilities.ApiEventLog;
+import utilities.ApiRevision;
+import utilities.CheckpointJournal;
+import utilities.GatewayDeployment;
+import utilities.GatewayThrottle;
+import utilities.RestRequests;
+import utilities.StateIndex;
+import utilities.TokenManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Redeploys a single API of a tenant. The steps of an API run strictly in order on one worker, while the tasks of
+ * many APIs run concurrently on the API executor of {@link DeploymentService}.
+ *
+ * <p>The deployed revisions are read from the Publisher unless the task carries out a plan made earlier with
+ * {@code --plan}, in which case only the changes of the plan are made.</p>
+ */
+public class ApiRedeploymentTask implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApiRedeploymentTask.class);
+
+    private final TokenManager tokens;
+    private final JSONObject apiDetails;
+    private final TenantRedeploymentResult result;
+    private final RedeployPlan plannedChanges;
+
+    public ApiRedeploymentTask(TokenManager tokens, JSONObject apiDetails, TenantRedeploymentResult result) {
+        this(tokens, apiDetails, result, null);
+    }
+
+    public ApiRedeploymentTask(TokenManager tokens, JSONObject apiDetails, TenantRedeploymentResult result,
+                               RedeployPlan plannedChanges) {
+        this.tokens = tokens;
+        this.apiDetails = apiDetails;
+        this.result = result;
+        this.plannedChanges = plannedChanges;
+    }
+
+    @Override
+    public void run() {
+        String apiId = (String) apiDetails.get("id");
+        String apiName = (String) apiDetails.get("name");
+        try {
+            if (redeploy(apiId, apiName)) {
+                result.apiRedeployed();
+            }
+        } catch (Exception e) {
+            logger.error("Unexpected error while redeploying API: {} with ID: {} in the tenant {}: {}", apiName, apiId,
+                    result.getTenant(), e.getMessage(), e);
+            result.apiFailed();
+        }
+    }
+
+    private boolean redeploy(String apiId, String apiName) throws Exception {
+        String publisherRestUrl = DeploymentService.publisherRestUrl;
+        String tenant = result.getTenant();
+        CheckpointJournal journal = DeploymentService.journal;
+        String lastUpdatedTime = StateIndex.lastUpdatedTime(apiDetails);
+
+        CheckpointJournal.Checkpoint checkpoint = journal.getCheckpoint(tenant, apiId);
+        if (checkpoint != null && checkpoint.getStep().isFinal()) {
+            ApiEventLog.step(tenant, apiId, "completed-previously", checkpoint.getRevisionId(), System.nanoTime());
+            // The index of an interrupted run was never saved, so it is brought up to date from the journal
+            DeploymentService.stateIndex.update(tenant, apiId, lastUpdatedTime, checkpoint.getRevisionId());
+            result.apiSkipped();
+            return false;
+        }
+        // A revision created by an interrupted run is deployed instead of creating another one
+        String resumedRevisionId = checkpoint != null && checkpoint.getStep() == CheckpointJournal.Step.REVISION_CREATED
+                ? checkpoint.getRevisionId() : null;
+
+        // When pruning, all revisions are listed at once, so the revisions to delete are known without another call
+        boolean prune = DeploymentService.pruneRevisions && resumedRevisionId == null;
+        RedeployPlan plan = plannedChanges != null ? plannedChanges
+                : readPlan(publisherRestUrl, apiId, apiName, prune, resumedRevisionId, lastUpdatedTime);
+        if (plan == null) {
+            return false;
+        }
+
+        //Used to iterate through the revisions and then undeploy the revisions mentioned on the revision.json file
+        for (String revisionID : plan.getRevisionsToUndeploy()) {
+            long stepStart = System.nanoTime();
+            JSONArray undeployResponse = tokens.call(token -> RestRequests.undeployRevisions(publisherRestUrl,
+                    DeploymentService.undeploySpec, token, apiId, revisionID));
+            if (undeployResponse == null) {
+                // The local plan assumes the undeployment, so the new revision must not be deployed without it
+                logger.error("Failed to undeploy revision with ID: {} of API: {} with ID: {}", revisionID, apiName,
+                        apiId);
+                ApiEventLog.failed(tenant, apiId, "undeploy", revisionID, stepStart);
+                result.apiFailed();
+                return false;
+            }
+            ApiEventLog.step(tenant, apiId, "undeploy", revisionID, stepStart);
+        }
+        // Recorded only once every undeployment succeeded, so resumed runs undeploy again after a failed call
+        if (resumedRevisionId == null) {
+            journal.record(tenant, apiId, CheckpointJournal.Step.UNDEPLOYED, null);
+        }
+
+        List<GatewayDeployment> deployments = plan.getRemainingDeployments();
+        if (DeploymentService.verifyPlan) {
+            // Cautious runs re-read the deployments from the server instead of relying on the local plan
+            List<ApiRevision> updateDeployedRevisionDetails = tokens.call(token ->
+                    RestRequests.getRevisionDetails(publisherRestUrl, token, apiId));
+            deployments = updateDeployedRevisionDetails != null
+                    ? RedeployPlan.mergeDeployments(updateDeployedRevisionDetails) : Collections.emptyList();
+            if (!new HashSet<>(deployments).equals(new HashSet<>(plan.getRemainingDeployments()))) {
+                logger.warn("Deployments of API: {} with ID: {} differ from the local plan. Using the deployments " +
+                        "read from the server", apiName, apiId);
+            }
+        }
+        if (deployments.isEmpty()) {
+            logger.warn("No gateway environments remain to deploy a new revision of API: {} with ID: {}", apiName, apiId);
+            journal.record(tenant, apiId, CheckpointJournal.Step.SKIPPED, resumedRevisionId);
+            DeploymentService.stateIndex.update(tenant, apiId, lastUpdatedTime, null);
+            result.apiSkipped();
+            return false;
+        }
+
+        if (prune && !pruneRevisions(publisherRestUrl, apiId, apiName, plan)) {
+            result.apiFailed();
+            return false;
+        }
+
+        String newRevisionId = resumedRevisionId;
+        if (newRevisionId == null) {
+            long stepStart = System.nanoTime();
+            JSONObject createNewRevisionResponse = tokens.call(token -> RestRequests.createRevision(publisherRestUrl,
+                    token, apiId, DeploymentService.revisionDescription));
+            if (createNewRevisionResponse == null || createNewRevisionResponse.isEmpty()) {
+                logger.error("Failed to create new revision for API: {} with ID: {}", apiName, apiId);
+                ApiEventLog.failed(tenant, apiId, "create", null, stepStart);
+                result.apiFailed();
+                return false;
+            }
+            newRevisionId = (String) createNewRevisionResponse.get("id");
+            ApiEventLog.step(tenant, apiId, "create", newRevisionId, stepStart);
+            // Wait for the record to reach the disk, so a resumed run never creates a second revision
+            journal.recordDurably(tenant, apiId, CheckpointJournal.Step.REVISION_CREATED, newRevisionId);
+        } else {
+            ApiEventLog.step(tenant, apiId, "resume", newRevisionId, System.nanoTime());
+        }
+
+        if (!deployNewRevision(publisherRestUrl, apiId, deployments, newRevisionId)) {
+            result.apiFailed();
+            return false;
+        }
+        journal.record(tenant, apiId, CheckpointJournal.Step.DEPLOYED, newRevisionId);
+        // The update time seen in the listing is recorded, so the next incremental run skips this API until it changes
+        DeploymentService.stateIndex.update(tenant, apiId, lastUpdatedTime, newRevisionId);
+        if (DeploymentService.deploymentVerifier != null) {
+            // The gateways pick up the deployment asynchronously, so it is followed without holding this worker
+            DeploymentService.deploymentVerifier.watch(tokens, result, apiDetails, newRevisionId, deployments);
+        }
+        return true;
+    }
+
+    /**
+     * Reads the revisions of the API and plans its redeployment, or returns null if the API is skipped.
+     */
+    private RedeployPlan readPlan(String publisherRestUrl, String apiId, String apiName, boolean prune,
+                                  String resumedRevisionId, String lastUpdatedTime) throws Exception {
+        String tenant = result.getTenant();
+        CheckpointJournal journal = DeploymentService.journal;
+        long stepStart = System.nanoTime();
+        List<ApiRevision> deployedRevisionDetails = tokens.call(token ->
+                RestRequests.getRevisionDetails(publisherRestUrl, token, apiId, !prune));
+        if (deployedRevisionDetails == null) {
+            // Neither a checkpoint nor the state index is updated, so resumed and incremental runs retry the API
+            logger.error("Failed to read the revisions of API: {} with ID: {}", apiName, apiId);
+            ApiEventLog.failed(tenant, apiId, "read", null, stepStart);
+            result.apiFailed();
+            return null;
+        }
+        ApiEventLog.step(tenant, apiId, "read", null, stepStart);
+        if (deployedRevisionDetails.stream().noneMatch(ApiRevision::isDeployed)) {
+            logger.warn("No deployed revisions found for API: {} with ID: {}", apiName, apiId);
+            journal.record(tenant, apiId, CheckpointJournal.Step.SKIPPED, resumedRevisionId);
+            DeploymentService.stateIndex.update(tenant, apiId, lastUpdatedTime, null);
+            result.apiSkipped();
+            return null;
+        }
+
+        if (!DeploymentService.apiSelector.matchesDeployments(deployedRevisionDetails)) {
+            ApiEventLog.step(tenant, apiId, "not-selected", null, stepStart);
+            result.apiNotSelected();
+            return null;
+        }
+
+        return RedeployPlan.build(deployedRevisionDetails, DeploymentService.undeploySpec);
+    }
+
+    /**
+     * Deletes the oldest revisions that are no longer deployed, so creating the new revision doesn't exceed the
+     * maximum number of revisions per API.
+     */
+    private boolean pruneRevisions(String publisherRestUrl, String apiId, String apiName, RedeployPlan plan)
+            throws Exception {
+        List<String> revisionsToPrune = plan.getRevisionsToPrune(DeploymentService.maxRevisions);
+        int excess = plan.getRevisionCount() - DeploymentService.maxRevisions + 1;
+        if (revisionsToPrune.size() < excess) {
+            logger.warn("Only {} of the {} revisions over the limit of API: {} with ID: {} are undeployed and can be " +
+                    "deleted, creating the new revision may fail", revisionsToPrune.size(), excess, apiName, apiId);
+        }
+        for (String revisionId : revisionsToPrune) {
+            long stepStart = System.nanoTime();
+            if (!tokens.call(token -> RestRequests.deleteRevision(publisherRestUrl, token, apiId, revisionId))) {
+                logger.error("Failed to delete revision: {} of API: {} with ID: {}", revisionId, apiName, apiId);
+                ApiEventLog.failed(result.getTenant(), apiId, "prune", revisionId, stepStart);
+                return false;
+            }
+            ApiEventLog.step(result.getTenant(), apiId, "prune", revisionId, stepStart);
+        }
+        return true;
+    }
+
+    private boolean deployNewRevision(String publisherRestUrl, String apiId, List<GatewayDeployment> deployments, String newRevisionId) throws Exception {
+        // A single deploy request covers every environment, so the gateways receive one sync event per API
+        // Deployments are paced per gateway environment, so the gateways aren't flooded with artifact syncs
+        ArrayList<JSONObject> deployRevision;
+        long stepStart;
+        GatewayThrottle.Permit permit = GatewayThrottle.getInstance().acquire(deployments);
+        try {
+            // The latency excludes the time spent waiting for the gateway throttle
+            stepStart = System.nanoTime();
+            deployRevision = tokens.call(token ->
+                    RestRequests.deployRevision(publisherRestUrl, token, apiId, deployments, newRevisionId));
+        } finally {
+            permit.close();
+        }
+        if (deployRevision == null || deployRevision.isEmpty()) {
+            logger.error("Failed to deploy new revision with ID: {}", newRevisionId);
+            ApiEventLog.failed(result.getTenant(), apiId, "deploy", newRevisionId, stepStart);
+            return false;
+        }
+        ApiEventLog.step(result.getTenant(), apiId, "deploy", newRevisionId, stepStart);
+        return true;
+    }
+}
@@ -1,18 +1,43 @@
+import ch.qos.logback.classic.LoggerContext;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
+import utilities.ApiEventLog;
+import utilities.ApiListIterator;
+import utilities.ApiSelector;
+import utilities.BoundedExecutor;
+import utilities.CheckpointJournal;
+import utilities.GatewayThrottle;
+import utilities.HttpClientManager;
+import utilities.LeaseCoordinator;
+import utilities.NamedThreadFactory;
 import utilities.ReadConfigFile;
+import utilities.RequestGovernor;
 import utilities.RestRequests;
+import utilities.RunMetrics;
+import utilities.ShardPlan;
+import utilities.StateIndex;
+import utilities.TokenManager;
+import utilities.UndeploySpec;
+import org.slf4j.ILoggerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
 
 public class DeploymentService {
     private static final Logger logger = LoggerFactory.getLogger(DeploymentService.class);
@@ -28,8 +53,47 @@ public class DeploymentService {
     static String apiListOrderBy;
     static String keyStorePath;
     static String keyStorePassword;
+    static int tenantParallelism;
+    static UndeploySpec undeploySpec;
+    static ApiSelector apiSelector;
+    static boolean verifyPlan;
+    static boolean pruneRevisions;
+    static int maxRevisions;
+    static String journalPath;
+    static CheckpointJournal journal;
+    static String metricsPrometheusFile;
+    static String metricsSummaryFile;
+    static int metricsSampleInterval;
+    static int apiMaxInFlight;
+    static String stateIndexPath;
+    static StateIndex stateIndex;
+    static boolean incremental;
+    // Token managers kept across runs by the daemon, or null when every run obtains its own tokens
+    static Map<String, TokenManager> tokenCache;
+    static ShardPlan shardPlan = ShardPlan.single();
+    static Set<String> splitTenants;
+    static String leaseDir;
+    static long leaseTimeoutMs;
+    static String shardReportDir;
+    static String runId;
+    // Writer of the plan file while planning with --plan, or null when APIs are redeployed
+    static RedeployPlanFile.Writer planWriter;
+    static int executeMaxInFlight;
+    static DeploymentVerifier deploymentVerifier;
+    static boolean verifyDeployments;
+    static long verifyMinIntervalSeconds;
+    static long verifyMaxIntervalSeconds;
+    static long verifyTimeoutSeconds;
+    static double verifyMaxRequestsPerSecond;
+    static boolean verifyRequeue;
+    static String verifyReportFile;
+    private static BoundedExecutor apiExecutor;
 
     public static void main(String[] args) {
+        // The daemon flushes the logs itself once its last run has drained
+        if (!Arrays.asList(args).contains("--daemon")) {
+            Runtime.getRuntime().addShutdownHook(new Thread(DeploymentService::stopLogging, "log-shutdown"));
+        }
         logger.info("Starting the API deployment service...");
         try {
             // Load configurations
@@ -37,111 +101,688 @@ public class DeploymentService {
         } catch (IllegalArgumentException | IOException e) {
             logger.error("Configuration error: {}", e.getMessage());
             e.printStackTrace();
+            return;
         }
 
-        // Parse JSON token string from the config.properties file
-        if (jsonFilePath != null && !jsonFilePath.trim().isEmpty()) {
-            JSONParser parser = new JSONParser();
-            try (FileReader reader = new FileReader(jsonFilePath)) {
-                JSONObject jsonObject = (JSONObject) parser.parse(reader);
-                Set<String> tenants = jsonObject.keySet();
-
-                // Iterate over each tenant
-                logger.info("Starting tenant-specific API deployment");
-                for (String tenant : tenants) {
-                    JSONObject credentials = (JSONObject) jsonObject.get(tenant);
-                    String consumerKey = (String) credentials.get("consumerKey");
-                    String consumerSecret = (String) credentials.get("consumerSecret");
-
-                    logger.info("Starting the process of redeploying APIs in the tenant: {}", tenant);
-                    logger.info("Retrieving access token for tenant: {} with consumer key: {}", tenant, consumerKey);
-                    JSONObject tokenDetails = RestRequests.getToken(residentTokenUrl, consumerKey, consumerSecret);
-                    if (tokenDetails == null || tokenDetails.isEmpty()) {
-                        logger.error("Failed to obtain access token for consumerKey: {}", consumerKey);
-                        continue;
-                    }
+        // Load the environments to be undeployed once, so a malformed file fails the run before any API is changed
+        try {
+            undeploySpec = UndeploySpec.load(revisonList);
+            logger.info("Gateway environments to be undeployed: {}", undeploySpec.getEnvironmentNames());
+        } catch (IllegalArgumentException | IOException e) {
+            logger.error("Unable to load the revisions file {}: {}", revisonList, e.getMessage());
+            return;
+        }
 
-                    String accessToken = (String) tokenDetails.get("access_token");
+        try {
+            // Created up front, so invalid gateway limits fail the run before any API is changed
+            GatewayThrottle.getInstance();
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid gateway deployment limits: {}", e.getMessage());
+            return;
+        }
 
-                    logger.info("Retrieving tenant-specific APIs for deployment");
-                    ArrayList<JSONObject> apiDetailsArray = RestRequests.getAPIList(publisherRestUrl, accessToken,
-                            apiListLimit, apiListOffset, apiListSortBy, apiListOrderBy);
+        try {
+            // Created up front as well, so invalid concurrency limits fail the run before any API is changed
+            RequestGovernor.getInstance();
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid request governor limits: {}", e.getMessage());
+            return;
+        }
 
-                    if (apiDetailsArray == null || apiDetailsArray.isEmpty()) {
-                        logger.error("No APIs found for the tenant {} with consumerKey: {}", tenant, consumerKey);
-                        continue;
-                    }
+        try {
+            apiSelector = ApiSelector.load();
+            logger.info("Selecting {} for redeployment", apiSelector);
+        } catch (IllegalArgumentException | IOException e) {
+            logger.error("Invalid API selection rules: {}", e.getMessage());
+            return;
+        }
 
-                    logger.info("Updating and creating new revisions for {} APIs in the tenant: {}", apiDetailsArray.size(), tenant);
-                    for (JSONObject apiDetails : apiDetailsArray) {
-                        String apiId = (String) apiDetails.get("id");
-                        String apiName = (String) apiDetails.get("name");
+        runId = argumentValue(args, "--run-id", LocalDate.now(ZoneOffset.UTC).toString());
+        if (Arrays.asList(args).contains("--merge-reports")) {
+            JSONObject tenants = loadTenants();
+            if (tenants != null) {
+                ShardReport.merge(shardReportDir, runId, tenants.keySet(), splitTenants);
+            }
+            return;
+        }
+        try {
+            String shard = argumentValue(args, "--shard", null);
+            if (shard != null) {
+                shardPlan = ShardPlan.parse(shard);
+                // Runners on the same host must not share their journal, state index or metrics files
+                journalPath = shardFile(journalPath);
+                stateIndexPath = shardFile(stateIndexPath);
+                metricsPrometheusFile = shardFile(metricsPrometheusFile);
+                metricsSummaryFile = shardFile(metricsSummaryFile);
+                verifyReportFile = shardFile(verifyReportFile);
+                logger.info("Running shard {} of run {}", shardPlan, runId);
+            }
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid shard: {}", e.getMessage());
+            return;
+        }
 
-                        logger.info("Retrieving details for API: {} with ID: {}", apiName, apiId);
-                        JSONObject apiData = RestRequests.getApiDetails(publisherRestUrl, accessToken, apiId);
-                        if (apiData == null) {
-                            logger.error("Failed to retrieve details for API: {} with ID: {}", apiName, apiId);
-                            continue;
-                        }
+        incremental = Arrays.asList(args).contains("--incremental");
+        stateIndex = StateIndex.load(stateIndexPath);
+        if (incremental) {
+            logger.info("Running incrementally, APIs not updated since their last redeployment are skipped");
+        }
+
+        String planFile = argumentValue(args, "--plan", null);
+        String executeFile = argumentValue(args, "--execute", null);
+        if ((planFile != null || executeFile != null) && Arrays.asList(args).contains("--daemon")
+                || planFile != null && executeFile != null) {
+            logger.error("--plan, --execute and --daemon can't be combined");
+            return;
+        }
 
-                        logger.info("Updating API: {} with ID: {}", apiName, apiId, apiData.toJSONString());
+        apiExecutor = new BoundedExecutor("api-worker",
+                executeFile != null ? resolveExecuteInFlightLimit() : resolveApiInFlightLimit());
+        try {
+            if (verifyDeployments && planFile == null) {
+                deploymentVerifier = new DeploymentVerifier(publisherRestUrl, verifyMinIntervalSeconds,
+                        verifyMaxIntervalSeconds, verifyTimeoutSeconds, verifyMaxRequestsPerSecond);
+                logger.info("Verifying that new revisions become active within {} s, polling up to {} times per " +
+                        "second", verifyTimeoutSeconds, verifyMaxRequestsPerSecond);
+            }
+            if (Arrays.asList(args).contains("--daemon")) {
+                new RedeploymentDaemon(Arrays.asList(args).contains("--resume")).run();
+            } else if (jsonFilePath != null && !jsonFilePath.trim().isEmpty()) {
+                // Parse JSON token string from the config.properties file
+                JSONObject tenants = loadTenants();
+                if (tenants != null && planFile != null) {
+                    planRedeployment(tenants, planFile);
+                } else if (tenants != null && executeFile != null) {
+                    executePlan(tenants, executeFile, Arrays.asList(args).contains("--resume"));
+                } else if (tenants != null) {
+                    runRedeployment(tenants, Arrays.asList(args).contains("--resume"));
+                }
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            logger.error("Unable to start the redeployment service: {}", e.getMessage());
+        } finally {
+            if (deploymentVerifier != null) {
+                deploymentVerifier.close();
+            }
+            apiExecutor.shutdown();
+        }
+    }
 
-                        ArrayList<JSONObject> deployedRevisionDetails = RestRequests.getRevisionDetails(publisherRestUrl, accessToken, apiId);
-                        if (deployedRevisionDetails == null || deployedRevisionDetails.isEmpty()) {
-                            logger.warn("No deployed revisions found for API: {} with ID: {}", apiName, apiId);
-                            continue;
+    /**
+     * Stops the logger context, so the events still queued by the async appenders are written before the JVM exits.
+     */
+    static void stopLogging() {
+        ILoggerFactory loggerFactory = LoggerFactory.getILoggerFactory();
+        if (loggerFactory instanceof LoggerContext) {
+            ((LoggerContext) loggerFactory).stop();
+        }
+    }
+
+    /**
+     * Reads the tenants and their credentials from the tenants file, or returns null if it can't be read.
+     */
+    static JSONObject loadTenants() {
+        try (FileReader reader = new FileReader(jsonFilePath)) {
+            return (JSONObject) new JSONParser().parse(reader);
+        } catch (FileNotFoundException e) {
+            logger.error("JSON file not found: {}", jsonFilePath);
+        } catch (IOException e) {
+            logger.error("IOException when reading JSON file: {}", e.getMessage());
+        } catch (ParseException | ClassCastException e) {
+            logger.error("Error parsing JSON file: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Redeploys the APIs of all given tenants and logs the summary of the run.
+     */
+    static void runRedeployment(JSONObject tenantCredentials, boolean resume) {
+        if (!openJournal(resume)) {
+            return;
+        }
+        LeaseCoordinator leases = createLeaseCoordinator();
+        // The daemon runs many times in one process, and every run gets the full retry budget
+        RequestGovernor.getInstance().startRun();
+        RunMetrics.start(metricsPrometheusFile, metricsSummaryFile, metricsSampleInterval);
+        try {
+            List<TenantRedeploymentResult> results = processWorkUnits(tenantCredentials, leases);
+            logSummary(results, "Redeployed");
+            if (deploymentVerifier != null) {
+                deploymentVerifier.writeReport(verifyReportFile, runId);
+            }
+            if (shardPlan.isSharded() && shardReportDir != null) {
+                ShardReport.write(shardReportDir, runId, shardPlan, results);
+            }
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while waiting for the tenant redeployments to complete");
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Unexpected error: {}", e.getMessage());
+            e.printStackTrace();
+        } finally {
+            if (leases != null) {
+                leases.close();
+            }
+            RunMetrics.stop();
+            closeJournal();
+            saveStateIndex();
+        }
+    }
+
+    /**
+     * Reads the deployed revisions of the APIs of all given tenants and writes the changes a redeployment would make
+     * to a plan file, without changing any API.
+     */
+    static void planRedeployment(JSONObject tenantCredentials, String planFile) {
+        // With pruning enabled all revisions are listed, so the plan also holds the revisions to delete
+        try (RedeployPlanFile.Writer writer = new RedeployPlanFile.Writer(planFile, undeploySpec, pruneRevisions)) {
+            planWriter = writer;
+            RunMetrics.start(metricsPrometheusFile, metricsSummaryFile, metricsSampleInterval);
+            List<TenantRedeploymentResult> results = processWorkUnits(tenantCredentials, null);
+            logSummary(results, "Planned");
+            writer.commit();
+            int unplanned = 0;
+            for (TenantRedeploymentResult result : results) {
+                unplanned += result.getFailedApis();
+            }
+            if (unplanned > 0) {
+                logger.error("{} APIs could not be planned and are missing from the plan", unplanned);
+            }
+            logger.info("Plan of {} APIs written to {}", writer.getCount(), planFile);
+        } catch (IOException e) {
+            logger.error("Unable to write the plan file {}: {}", planFile, e.getMessage());
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while planning, no plan was written");
+            Thread.currentThread().interrupt();
+        } finally {
+            planWriter = null;
+            RunMetrics.stop();
+        }
+    }
+
+    /**
+     * Carries out a plan written by {@link #planRedeployment}. The plan is streamed, and the changes of each API are
+     * made without reading its revisions again, unless {@code REDEPLOY.VERIFY.PLAN} is set.
+     */
+    static void executePlan(JSONObject tenantCredentials, String planFile, boolean resume) {
+        Map<String, TenantRedeploymentResult> results = new LinkedHashMap<>();
+        Map<String, TokenManager> tenantTokens = new HashMap<>();
+        // Tenants without tokens fail once, and the rest of their APIs fail without asking for tokens again
+        Set<String> failedTenants = new HashSet<>();
+        boolean journalOpened = false;
+        try (RedeployPlanFile.Reader plan = new RedeployPlanFile.Reader(planFile)) {
+            // The undeploy requests are built from the revisions file, which must still match the plan
+            if (!new HashSet<>(plan.getEnvironmentNames()).equals(new HashSet<>(undeploySpec.getEnvironmentNames()))) {
+                logger.error("The plan {} undeploys {} but the revisions file lists {}, create a new plan",
+                        planFile, plan.getEnvironmentNames(), undeploySpec.getEnvironmentNames());
+                return;
+            }
+            if (pruneRevisions && !plan.listsAllRevisions()) {
+                logger.warn("The plan {} was created without REVISION.PRUNE.ENABLED, no revisions are pruned",
+                        planFile);
+            }
+            journalOpened = openJournal(resume);
+            if (!journalOpened) {
+                return;
+            }
+            RunMetrics.start(metricsPrometheusFile, metricsSummaryFile, metricsSampleInterval);
+            logger.info("Executing the plan {} created at {}", planFile, plan.getCreated());
+
+            Set<String> tenants = tenantCredentials.keySet();
+            Map<String, List<ShardPlan.WorkUnit>> ownedUnits = new HashMap<>();
+            for (ShardPlan.WorkUnit unit : shardPlan.workUnits(tenants, splitTenants)) {
+                if (shardPlan.owns(unit)) {
+                    ownedUnits.computeIfAbsent(unit.getTenant(), tenant -> new ArrayList<>()).add(unit);
+                }
+            }
+            Phaser pendingApis = new Phaser(1);
+            try {
+                while (plan.hasNext()) {
+                    RedeployPlanFile.Entry entry = plan.next();
+                    String tenant = entry.getTenant();
+                    String apiId = (String) entry.getApiDetails().get("id");
+                    JSONObject credentials = (JSONObject) tenantCredentials.get(tenant);
+                    if (credentials != null && ownedUnits.getOrDefault(tenant, Collections.emptyList()).stream()
+                            .noneMatch(unit -> unit.includes(apiId))) {
+                        continue;
+                    }
+                    TenantRedeploymentResult result = results.computeIfAbsent(tenant, key -> {
+                        TenantRedeploymentResult tenantResult = new TenantRedeploymentResult(key);
+                        RunMetrics.registerTenant(tenantResult);
+                        return tenantResult;
+                    });
+                    result.apiDiscovered();
+                    TokenManager tokens = tenantTokens.get(tenant);
+                    if (tokens == null && !failedTenants.contains(tenant)) {
+                        tokens = credentials != null ? obtainTokens(credentials, result) : null;
+                        if (tokens != null) {
+                            tenantTokens.put(tenant, tokens);
+                        } else {
+                            failedTenants.add(tenant);
+                            if (credentials == null) {
+                                result.fail("Not in the tenants file");
+                            }
                         }
+                    }
+                    if (tokens == null) {
+                        result.apiFailed();
+                        continue;
+                    }
+                    pendingApis.register();
+                    try {
+                        apiExecutor.submit(new ApiRedeploymentTask(tokens, entry.getApiDetails(), result,
+                                        entry.getPlan()))
+                                .whenComplete((ignored, error) -> pendingApis.arriveAndDeregister());
+                    } catch (InterruptedException | RuntimeException e) {
+                        pendingApis.arriveAndDeregister();
+                        throw e;
+                    }
+                }
+            } finally {
+                pendingApis.arriveAndAwaitAdvance();
+            }
+            List<TenantRedeploymentResult> tenantResults = new ArrayList<>(results.values());
+            for (TenantRedeploymentResult result : tenantResults) {
+                TokenManager tokens = tenantTokens.get(result.getTenant());
+                if (deploymentVerifier != null && tokens != null) {
+                    verifyDeployments(tokens, result);
+                }
+                result.finish();
+            }
+            logSummary(tenantResults, "Redeployed");
+            if (deploymentVerifier != null) {
+                deploymentVerifier.writeReport(verifyReportFile, runId);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Unable to execute the plan {}: {}", planFile, e.getMessage());
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while executing the plan {}", planFile);
+            Thread.currentThread().interrupt();
+        } finally {
+            for (TokenManager tokens : tenantTokens.values()) {
+                if (tokens != null) {
+                    tokens.close();
+                }
+            }
+            if (journalOpened) {
+                RunMetrics.stop();
+                closeJournal();
+                saveStateIndex();
+            }
+        }
+    }
 
-                        Map<String, List<Map<String, String>>> revisionMap = extractDeploymentInfo(deployedRevisionDetails);
+    /**
+     * Obtains the access token of a tenant, or marks the tenant as failed and returns null.
+     */
+    private static TokenManager obtainTokens(JSONObject credentials, TenantRedeploymentResult result) {
+        TokenManager tokens = new TokenManager(residentTokenUrl, (String) credentials.get("consumerKey"),
+                (String) credentials.get("consumerSecret"));
+        try {
+            tokens.getAccessToken();
+            return tokens;
+        } catch (IllegalStateException e) {
+            logger.error("Failed to obtain access token for the tenant {}", result.getTenant());
+            result.fail("Failed to obtain access token");
+            tokens.close();
+            return null;
+        }
+    }
 
-                        logger.info("Creating new revision for API: {} with ID: {}", apiName, apiId);
+    private static boolean openJournal(boolean resume) {
+        try {
+            journal = new CheckpointJournal(journalPath, resume);
+            if (resume) {
+                logger.info("Resuming the previous run using the checkpoint journal {}", journalPath);
+            }
+            return true;
+        } catch (IOException e) {
+            logger.error("Unable to open the checkpoint journal {}: {}", journalPath, e.getMessage());
+            return false;
+        }
+    }
 
-                        //Used to iterate through the revisions and then undeploy the revisions mentioned on the revision.json file
-                        for (Map.Entry<String, List<Map<String, String>>> entry : revisionMap.entrySet()) {
-                            String revisionID = entry.getKey();
+    /**
+     * Processes the work units of this shard on the tenant workers and returns their results.
+     */
+    private static List<TenantRedeploymentResult> processWorkUnits(JSONObject tenantCredentials,
+                                                                   LeaseCoordinator leases)
+            throws InterruptedException {
+        Set<String> tenants = tenantCredentials.keySet();
+        List<ShardPlan.WorkUnit> units = shardPlan.workUnits(tenants, splitTenants);
+        // Each tenant is redeployed independently, so a slow or broken tenant doesn't hold up the rest
+        logger.info("Starting tenant-specific API deployment for {} tenants with a parallelism of {}",
+                tenants.size(), tenantParallelism);
+        ExecutorService tenantExecutor = Executors.newFixedThreadPool(tenantParallelism,
+                new NamedThreadFactory("tenant-worker"));
+        try {
+            Map<ShardPlan.WorkUnit, Future<TenantRedeploymentResult>> tenantFutures = new LinkedHashMap<>();
+            for (ShardPlan.WorkUnit unit : units) {
+                // Without a lease directory each shard processes only its own units, otherwise idle shards take
+                // over the units that their owners haven't started yet
+                if (leases == null && !shardPlan.owns(unit)) {
+                    continue;
+                }
+                JSONObject credentials = (JSONObject) tenantCredentials.get(unit.getTenant());
+                tenantFutures.put(unit, tenantExecutor.submit(() -> redeployClaimedUnit(unit, credentials, leases)));
+            }
+            tenantExecutor.shutdown();
+
+            List<TenantRedeploymentResult> results = new ArrayList<>();
+            for (Map.Entry<ShardPlan.WorkUnit, Future<TenantRedeploymentResult>> entry : tenantFutures.entrySet()) {
+                try {
+                    TenantRedeploymentResult result = entry.getValue().get();
+                    if (result != null) {
+                        results.add(result);
+                    }
+                } catch (ExecutionException e) {
+                    ShardPlan.WorkUnit unit = entry.getKey();
+                    TenantRedeploymentResult result = new TenantRedeploymentResult(unit.getTenant(), unit.getId());
+                    result.fail(String.valueOf(e.getCause()));
+                    result.finish();
+                    results.add(result);
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            tenantExecutor.shutdownNow();
+            throw e;
+        }
+    }
 
-                            if (revisonList != null && !revisonList.trim().isEmpty()) {
-                                JSONParser revisionParser = new JSONParser();
-                                try (FileReader revisionReader = new FileReader(revisonList)) {
-                                    JSONArray jsonArray = (JSONArray) revisionParser.parse(revisionReader);
+    private static LeaseCoordinator createLeaseCoordinator() {
+        if (!shardPlan.isSharded() || leaseDir == null) {
+            return null;
+        }
+        try {
+            String owner = "shard-" + shardPlan.getShardIndex() + "-" + ProcessHandle.current().pid();
+            return new LeaseCoordinator(leaseDir, runId, owner, leaseTimeoutMs);
+        } catch (IOException e) {
+            logger.warn("Unable to use the lease directory {}, processing only the work units of this shard: {}",
+                    leaseDir, e.getMessage());
+            return null;
+        }
+    }
 
-                                    JSONArray undeployRevision = RestRequests.undeployRevisions(publisherRestUrl, jsonArray, accessToken, apiId, revisionID);
+    /**
+     * Redeploys a work unit once it has been claimed, or returns null if another shard has claimed it.
+     */
+    private static TenantRedeploymentResult redeployClaimedUnit(ShardPlan.WorkUnit unit, JSONObject credentials,
+                                                                LeaseCoordinator leases) {
+        if (leases == null) {
+            return redeployTenant(unit, credentials);
+        }
+        if (!leases.tryClaim(unit.getId())) {
+            logger.debug("Work unit {} is processed by another shard", unit);
+            return null;
+        }
+        if (!shardPlan.owns(unit)) {
+            logger.info("Taking over the unclaimed work unit {} of shard {}", unit, unit.getOwner());
+        }
+        try {
+            return redeployTenant(unit, credentials);
+        } finally {
+            leases.complete(unit.getId());
+        }
+    }
 
-                                }
+    /**
+     * Returns the file of this shard for a file shared by all runs, e.g. {@code metrics/redeployer.shard-1.prom}.
+     */
+    private static String shardFile(String path) {
+        if (path == null) {
+            return null;
+        }
+        int nameStart = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1;
+        int extension = path.lastIndexOf('.');
+        String suffix = ".shard-" + shardPlan.getShardIndex();
+        return extension > nameStart ? path.substring(0, extension) + suffix + path.substring(extension)
+                : path + suffix;
+    }
 
-                            }
+    private static String argumentValue(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals(name) && i + 1 < args.length) {
+                return args[i + 1];
+            }
+            if (args[i].startsWith(name + "=")) {
+                return args[i].substring(name.length() + 1);
+            }
+        }
+        return defaultValue;
+    }
 
-                        }
-                        ArrayList<JSONObject> updateDeployedRevisionDetails = RestRequests.getRevisionDetails(publisherRestUrl, accessToken, apiId);
+    private static void closeJournal() {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.error("Failed to close the checkpoint journal {}: {}", journalPath, e.getMessage());
+        }
+    }
 
-                        Map<String, List<Map<String, String>>> updatedRevisionMap = extractDeploymentInfo(updateDeployedRevisionDetails);
+    private static void saveStateIndex() {
+        try {
+            stateIndex.save();
+        } catch (IOException e) {
+            logger.error("Failed to save the state index {}: {}", stateIndexPath, e.getMessage());
+        }
+    }
 
-                        JSONObject createNewRevisionResponse = RestRequests.createRevision(publisherRestUrl, accessToken, apiId, revisionDescription);
-                        if (createNewRevisionResponse == null || createNewRevisionResponse.isEmpty()) {
-                            logger.error("Failed to create new revision for API: {} with ID: {}", apiName, apiId);
-                            continue;
-                        }
-                        String newRevisionId = (String) createNewRevisionResponse.get("id");
-                        logger.info("Created new revision with ID: {}", newRevisionId);
+    private static TenantRedeploymentResult redeployTenant(ShardPlan.WorkUnit unit, JSONObject credentials) {
+        String tenant = unit.getTenant();
+        TenantRedeploymentResult result = new TenantRedeploymentResult(tenant, unit.getId());
+        RunMetrics.registerTenant(result);
+        TokenManager tokens = null;
+        try {
+            String consumerKey = (String) credentials.get("consumerKey");
+            String consumerSecret = (String) credentials.get("consumerSecret");
+
+            logger.info("Starting the process of redeploying APIs in the tenant: {}", tenant);
+            logger.info("Retrieving access token for tenant: {} with consumer key: {}", tenant, consumerKey);
+            tokens = tokenCache != null
+                    ? tokenCache.computeIfAbsent(tenant, key ->
+                            new TokenManager(residentTokenUrl, consumerKey, consumerSecret))
+                    : new TokenManager(residentTokenUrl, consumerKey, consumerSecret);
+            try {
+                tokens.getAccessToken();
+            } catch (IllegalStateException e) {
+                logger.error("Failed to obtain access token for consumerKey: {}", consumerKey);
+                result.fail("Failed to obtain access token");
+                return result;
+            }
 
-                        deployNewRevision(publisherRestUrl, accessToken, apiId, updatedRevisionMap, newRevisionId);
+            logger.info("Retrieving tenant-specific APIs for deployment");
+            ApiListIterator apis = new ApiListIterator(publisherRestUrl, tokens,
+                    apiListLimit, apiListOffset, apiListSortBy, apiListOrderBy, apiSelector.getServerQuery());
 
+            if (!apis.hasNext() && apiSelector.getServerQuery() != null) {
+                logger.info("No APIs match the selection rules in the tenant {}", tenant);
+                return result;
+            }
+            if (!apis.hasNext()) {
+                logger.error("No APIs found for the tenant {} with consumerKey: {}", tenant, consumerKey);
+                result.fail("No APIs found");
+                return result;
+            }
 
+            // A slice of a split tenant holds about its share of the tenant's APIs
+            result.setExpectedApis(apis.getTotal() / unit.getSliceCount());
+            logger.info("Updating and creating new revisions for {} APIs in the tenant: {}", apis.getTotal(), tenant);
+            // Each API is redeployed by its own task so that many APIs are in flight at once. APIs are listed page by
+            // page while earlier pages are being redeployed
+            Phaser pendingApis = new Phaser(1);
+            try {
+                while (apis.hasNext()) {
+                    JSONObject apiDetails = apis.next();
+                    if (!unit.includes((String) apiDetails.get("id"))) {
+                        continue;
+                    }
+                    if (!apiSelector.matches(apiDetails)) {
+                        result.apiNotSelected();
+                        continue;
+                    }
+                    result.apiDiscovered();
+                    if (incremental && stateIndex.isUnchanged(tenant, (String) apiDetails.get("id"),
+                            StateIndex.lastUpdatedTime(apiDetails))) {
+                        ApiEventLog.step(tenant, (String) apiDetails.get("id"), "unchanged", null, System.nanoTime());
+                        result.apiSkipped();
+                        continue;
+                    }
+                    pendingApis.register();
+                    Runnable task = planWriter != null ? new ApiPlanningTask(tokens, apiDetails, result, planWriter)
+                            : new ApiRedeploymentTask(tokens, apiDetails, result);
+                    try {
+                        apiExecutor.submit(task)
+                                .whenComplete((ignored, error) -> pendingApis.arriveAndDeregister());
+                    } catch (InterruptedException | RuntimeException e) {
+                        pendingApis.arriveAndDeregister();
+                        throw e;
                     }
-                    logger.info("API redeployment process for the tenant: {} with consumer key: {} has been completed", tenant, consumerKey);
                 }
-            } catch (FileNotFoundException e) {
-                logger.error("JSON file not found: {}", jsonFilePath);
-            } catch (IOException e) {
-                logger.error("IOException when reading JSON file: {}", e.getMessage());
-            } catch (ParseException e) {
-                logger.error("Error parsing JSON file: {}", e.getMessage());
-            } catch (Exception e) {
-                logger.error("Unexpected error: {}", e.getMessage());
-                e.printStackTrace();
+            } finally {
+                pendingApis.arriveAndAwaitAdvance();
             }
-            logger.info("All API redeployment processes have been successfully completed");
+            if (deploymentVerifier != null && planWriter == null) {
+                verifyDeployments(tokens, result);
+            }
+            logger.info("API redeployment process for the tenant: {} with consumer key: {} has been completed", tenant, consumerKey);
+        } catch (Exception e) {
+            logger.error("Unexpected error while redeploying APIs in the tenant {}: {}", tenant, e.getMessage(), e);
+            result.fail(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        } finally {
+            // Cached token managers stay open, so the next run of the daemon starts with a valid token
+            if (tokens != null && tokenCache == null) {
+                tokens.close();
+            }
+            result.finish();
         }
+        return result;
+    }
+
+    /**
+     * Waits until the deployments of the APIs of a work unit are verified. APIs whose new revision never became
+     * active on every expected gateway environment are recorded as unverified, so a resumed or incremental run
+     * redeploys them, and with {@code VERIFY.REQUEUE} they are redeployed once more right away and followed again.
+     */
+    private static void verifyDeployments(TokenManager tokens, TenantRedeploymentResult result)
+            throws IOException, InterruptedException {
+        List<DeploymentVerifier.Verification> unverified = new ArrayList<>();
+        for (DeploymentVerifier.Verification verification : deploymentVerifier.awaitUnit(result.getWorkUnit())) {
+            if (!verification.isVerified()) {
+                markUnverified(verification);
+                unverified.add(verification);
+            }
+        }
+        if (unverified.isEmpty() || !verifyRequeue) {
+            for (DeploymentVerifier.Verification verification : unverified) {
+                deploymentVerifier.reportUnverified(verification, false);
+                result.apiUnverified();
+            }
+            return;
+        }
+
+        logger.warn("Redeploying {} APIs of the tenant {} whose new revision did not become active",
+                unverified.size(), result.getTenant());
+        // The redeployments are counted apart, so an API isn't counted twice in the summary of the tenant
+        TenantRedeploymentResult requeued = new TenantRedeploymentResult(result.getTenant(), result.getWorkUnit());
+        Phaser pendingApis = new Phaser(1);
+        try {
+            for (DeploymentVerifier.Verification verification : unverified) {
+                pendingApis.register();
+                try {
+                    apiExecutor.submit(new ApiRedeploymentTask(tokens, verification.getApiDetails(), requeued))
+                            .whenComplete((ignored, error) -> pendingApis.arriveAndDeregister());
+                } catch (InterruptedException | RuntimeException e) {
+                    pendingApis.arriveAndDeregister();
+                    throw e;
+                }
+            }
+        } finally {
+            pendingApis.arriveAndAwaitAdvance();
+        }
+        Map<String, DeploymentVerifier.Verification> retried = new HashMap<>();
+        for (DeploymentVerifier.Verification verification : deploymentVerifier.awaitUnit(result.getWorkUnit())) {
+            retried.put(verification.getApiId(), verification);
+        }
+        for (DeploymentVerifier.Verification verification : unverified) {
+            // APIs that failed to redeploy keep the outcome of their first deployment
+            DeploymentVerifier.Verification last = retried.getOrDefault(verification.getApiId(), verification);
+            if (!last.isVerified()) {
+                if (last != verification) {
+                    markUnverified(last);
+                }
+                deploymentVerifier.reportUnverified(last, true);
+                result.apiUnverified();
+            }
+        }
+        logger.info("Re-queued APIs of the tenant {} | Redeployed: {} | Failed: {} | Skipped: {} | " +
+                        "Still unverified: {}", result.getTenant(), requeued.getRedeployedApis(),
+                requeued.getFailedApis(), requeued.getSkippedApis(), result.getUnverifiedApis());
+    }
+
+    private static void markUnverified(DeploymentVerifier.Verification verification) throws IOException {
+        journal.record(verification.getTenant(), verification.getApiId(), CheckpointJournal.Step.UNVERIFIED,
+                verification.getRevisionId());
+        // Without an update time the API counts as changed, so the next incremental run redeploys it
+        stateIndex.update(verification.getTenant(), verification.getApiId(), null, verification.getRevisionId());
+    }
+
+    /**
+     * Derives the number of APIs that may be in flight at once from the HTTP connection pool size. One connection
+     * is kept for each tenant worker to list APIs and fetch tokens, and the rest are shared by the API workers.
+     */
+    private static int resolveApiInFlightLimit() {
+        int poolSize = HttpClientManager.getPoolSize();
+        int limit = Math.max(1, poolSize - tenantParallelism);
+        if (apiMaxInFlight > 0 && apiMaxInFlight < limit) {
+            limit = apiMaxInFlight;
+        } else if (apiMaxInFlight > limit) {
+            logger.warn("API.MAX.INFLIGHT of {} exceeds the {} connections available in the HTTP pool of size {}. " +
+                    "Using {} instead", apiMaxInFlight, limit, poolSize, limit);
+        }
+        logger.info("Redeploying up to {} APIs concurrently over a connection pool of size {}", limit, poolSize);
+        return limit;
+    }
+
+    /**
+     * Logs the results of every tenant, counting the APIs that were processed successfully as the given outcome,
+     * e.g. {@code Redeployed}.
+     */
+    private static void logSummary(List<TenantRedeploymentResult> results, String outcome) {
+        int completedTenants = 0;
+        logger.info("API redeployment summary:");
+        for (TenantRedeploymentResult result : results) {
+            if (result.getStatus() == TenantRedeploymentResult.Status.COMPLETED) {
+                completedTenants++;
+            }
+            if (result.getStatus() == TenantRedeploymentResult.Status.FAILED) {
+                logger.error("Tenant: {} | Status: {} | Reason: {} | Time: {} ms", result.getTenant(),
+                        result.getStatus(), result.getFailureReason(), result.getElapsedMillis());
+            } else {
+                logger.info("Tenant: {} | Status: {} | APIs: {} | {}: {} | Failed: {} | Skipped: {} | " +
+                                "Not selected: {} | Unverified: {} | Time: {} ms", result.getTenant(),
+                        result.getStatus(), result.getTotalApis(), outcome, result.getRedeployedApis(),
+                        result.getFailedApis(), result.getSkippedApis(), result.getUnselectedApis(),
+                        result.getUnverifiedApis(), result.getElapsedMillis());
+            }
+        }
+        logger.info("API redeployment completed for {} of {} tenants without failures", completedTenants, results.size());
+    }
+
+    /**
+     * Derives the number of APIs whose planned changes are made at once. No tenant workers run while a plan is
+     * executed, so every connection but one, which is kept for token requests, is available to the API workers.
+     */
+    private static int resolveExecuteInFlightLimit() {
+        int poolSize = HttpClientManager.getPoolSize();
+        int limit = Math.max(1, poolSize - 1);
+        if (executeMaxInFlight > 0) {
+            limit = Math.min(limit, executeMaxInFlight);
+        }
+        logger.info("Executing the planned changes of up to {} APIs concurrently over a connection pool of size {}",
+                limit, poolSize);
+        return limit;
     }
 
     private static void loadConfigurations() throws IOException {
@@ -159,6 +800,44 @@ public class DeploymentService {
         apiListOffset = loadAndValidateProperty(configs, "API.LIST.OFFSET");
         apiListSortBy = loadAndValidateProperty(configs, "API.LIST.SORTBY");
         apiListOrderBy = loadAndValidateProperty(configs, "API.LIST.ORDERBY");
+        tenantParallelism = Integer.parseInt(loadOptionalProperty(configs, "TENANT.PARALLELISM", "1"));
+        if (tenantParallelism < 1) {
+            throw new IllegalArgumentException("TENANT.PARALLELISM must be a positive integer");
+        }
+        apiMaxInFlight = Integer.parseInt(loadOptionalProperty(configs, "API.MAX.INFLIGHT", "0"));
+        executeMaxInFlight = Integer.parseInt(loadOptionalProperty(configs, "EXECUTE.MAX.INFLIGHT", "0"));
+        verifyPlan = Boolean.parseBoolean(loadOptionalProperty(configs, "REDEPLOY.VERIFY.PLAN", "false"));
+        pruneRevisions = Boolean.parseBoolean(loadOptionalProperty(configs, "REVISION.PRUNE.ENABLED", "false"));
+        maxRevisions = Integer.parseInt(loadOptionalProperty(configs, "REVISION.MAX.COUNT", "5"));
+        if (maxRevisions < 1) {
+            throw new IllegalArgumentException("REVISION.MAX.COUNT must be a positive integer");
+        }
+        journalPath = loadOptionalProperty(configs, "CHECKPOINT.JOURNAL.PATH", "checkpoint.journal");
+        stateIndexPath = loadOptionalProperty(configs, "STATE.INDEX.PATH", "state.index");
+        metricsPrometheusFile = loadOptionalProperty(configs, "METRICS.PROMETHEUS.FILE", null);
+        metricsSummaryFile = loadOptionalProperty(configs, "METRICS.SUMMARY.FILE", null);
+        metricsSampleInterval = Integer.parseInt(loadOptionalProperty(configs, "METRICS.SAMPLE.INTERVAL.SECONDS", "30"));
+        if (metricsSampleInterval < 1) {
+            throw new IllegalArgumentException("METRICS.SAMPLE.INTERVAL.SECONDS must be a positive integer");
+        }
+        splitTenants = new HashSet<>();
+        for (String tenant : loadOptionalProperty(configs, "SHARD.SPLIT.TENANTS", "").split(",")) {
+            if (!tenant.trim().isEmpty()) {
+                splitTenants.add(tenant.trim());
+            }
+        }
+        leaseDir = loadOptionalProperty(configs, "SHARD.LEASE.DIR", null);
+        leaseTimeoutMs = TimeUnit.SECONDS.toMillis(
+                Long.parseLong(loadOptionalProperty(configs, "SHARD.LEASE.TIMEOUT.SECONDS", "120")));
+        shardReportDir = loadOptionalProperty(configs, "SHARD.REPORT.DIR", "reports");
+        verifyDeployments = Boolean.parseBoolean(loadOptionalProperty(configs, "VERIFY.ENABLED", "false"));
+        verifyMinIntervalSeconds = Long.parseLong(loadOptionalProperty(configs, "VERIFY.INTERVAL.MIN.SECONDS", "2"));
+        verifyMaxIntervalSeconds = Long.parseLong(loadOptionalProperty(configs, "VERIFY.INTERVAL.MAX.SECONDS", "30"));
+        verifyTimeoutSeconds = Long.parseLong(loadOptionalProperty(configs, "VERIFY.TIMEOUT.SECONDS", "300"));
+        verifyMaxRequestsPerSecond = Double.parseDouble(
+                loadOptionalProperty(configs, "VERIFY.MAX.REQUESTS.PER.SECOND", "5"));
+        verifyRequeue = Boolean.parseBoolean(loadOptionalProperty(configs, "VERIFY.REQUEUE", "false"));
+        verifyReportFile = loadOptionalProperty(configs, "VERIFY.REPORT.FILE", "reports/verification.json");
 
     }
 
@@ -171,35 +850,11 @@ public class DeploymentService {
         return propertyValue;
     }
 
-    private static Map<String, List<Map<String, String>>> extractDeploymentInfo(ArrayList<JSONObject> deployedRevisionDetails) {
-        Map<String, List<Map<String, String>>> revisionMap = new HashMap<>();
-        for (JSONObject revisionDetail : deployedRevisionDetails) {
-            String revisionId = (String) revisionDetail.get("id");
-            ArrayList<JSONObject> deploymentInfoList = (ArrayList<JSONObject>) revisionDetail.get("deploymentInfo");
-            List<Map<String, String>> deploymentRevisionList = new ArrayList<>();
-            for (JSONObject deploymentInfo : deploymentInfoList) {
-                String name = (String) deploymentInfo.get("name");
-                String vhost = (String) deploymentInfo.get("vhost");
-                String displayOnDevportal = deploymentInfo.get("displayOnDevportal").toString();
-                Map<String, String> deploymentMap = new HashMap<>();
-                deploymentMap.put("name", name);
-                deploymentMap.put("vhost", vhost);
-                deploymentMap.put("displayOnDevportal", displayOnDevportal);
-                deploymentRevisionList.add(deploymentMap);
-            }
-            revisionMap.put(revisionId, deploymentRevisionList);
-        }
-        return revisionMap;
-    }
-
-    private static void deployNewRevision(String publisherRestUrl, String accessToken, String apiId, Map<String, List<Map<String, String>>> revisionMap, String newRevisionId) {
-        for (Map.Entry<String, List<Map<String, String>>> entry : revisionMap.entrySet()) {
-            ArrayList<JSONObject> deployRevision = RestRequests.deployRevision(publisherRestUrl, accessToken, apiId, entry.getValue(), newRevisionId);
-            if (deployRevision == null || deployRevision.isEmpty()) {
-                logger.error("Failed to deploy new revision with ID: {}", newRevisionId);
-                continue;
-            }
-            logger.info("New revision deployed successfully with ID: {}", newRevisionId);
+    private static String loadOptionalProperty(ReadConfigFile configs, String propertyName, String defaultValue) {
+        String propertyValue = configs.getProperty(propertyName);
+        if (propertyValue == null || propertyValue.trim().isEmpty()) {
+            return defaultValue;
         }
+        return propertyValue.trim();
     }
 }
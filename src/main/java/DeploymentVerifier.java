@@ -0,0 +1,353 @@
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utilities.ApiEventLog;
+import utilities.ApiRevision;
+import utilities.GatewayDeployment;
+import utilities.NamedThreadFactory;
+import utilities.RestRequests;
+import utilities.TokenManager;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows the gateway deployments of new revisions until they become active. A 201 from deploy-revision only means
+ * that the Publisher accepted the deployment; the gateways pick it up asynchronously, and a deployment can stay
+ * pending or be rejected by a workflow.
+ *
+ * <p>The deployed revisions of every watched API are polled from one queue by a single poller, within a global
+ * budget of requests per second, rather than by a loop per API. The first poll of an API is scheduled after the
+ * time the deployments of the run have been taking to become active, and later polls back off up to the maximum
+ * interval until the API is verified or its timeout expires.</p>
+ */
+public class DeploymentVerifier implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeploymentVerifier.class);
+
+    // Polls are short GETs, so a few workers keep up with any budget the Publisher should be given
+    private static final int POLL_WORKERS = 4;
+    // Weight of the latest activation time in the smoothed estimate
+    private static final double ACTIVATION_SMOOTHING = 0.2;
+
+    /**
+     * Outcome of following the deployment of a new revision of an API.
+     */
+    static final class Verification {
+        private final String tenant;
+        private final JSONObject apiDetails;
+        private final String revisionId;
+        private final List<GatewayDeployment> inactiveDeployments;
+        private final int polls;
+        private final long elapsedMillis;
+
+        Verification(String tenant, JSONObject apiDetails, String revisionId,
+                     List<GatewayDeployment> inactiveDeployments, int polls, long elapsedMillis) {
+            this.tenant = tenant;
+            this.apiDetails = apiDetails;
+            this.revisionId = revisionId;
+            this.inactiveDeployments = inactiveDeployments;
+            this.polls = polls;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        String getTenant() {
+            return tenant;
+        }
+
+        JSONObject getApiDetails() {
+            return apiDetails;
+        }
+
+        String getApiId() {
+            return (String) apiDetails.get("id");
+        }
+
+        String getRevisionId() {
+            return revisionId;
+        }
+
+        boolean isVerified() {
+            return inactiveDeployments.isEmpty();
+        }
+
+        /**
+         * Returns the expected deployments of the new revision that never became active.
+         */
+        List<GatewayDeployment> getInactiveDeployments() {
+            return inactiveDeployments;
+        }
+    }
+
+    /**
+     * A deployment being followed, ordered in the poll queue by the time of its next poll.
+     */
+    private final class Watch implements Delayed {
+        private final TokenManager tokens;
+        private final String tenant;
+        private final JSONObject apiDetails;
+        private final String revisionId;
+        private final List<GatewayDeployment> expected;
+        private final long deployedAt = System.nanoTime();
+        private final long deadline = deployedAt + timeoutNanos;
+        private final CompletableFuture<Verification> outcome = new CompletableFuture<>();
+        private List<GatewayDeployment> inactive;
+        private long intervalNanos;
+        private long nextPoll;
+        private int polls;
+
+        Watch(TokenManager tokens, String tenant, JSONObject apiDetails, String revisionId,
+              List<GatewayDeployment> expected) {
+            this.tokens = tokens;
+            this.tenant = tenant;
+            this.apiDetails = apiDetails;
+            this.revisionId = revisionId;
+            this.expected = expected;
+            this.inactive = expected;
+            this.intervalNanos = Math.max(minIntervalNanos, Math.min(maxIntervalNanos, activationEstimateNanos));
+            this.nextPoll = deployedAt + intervalNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(nextPoll - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(nextPoll, ((Watch) other).nextPoll);
+        }
+
+        void complete() {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - deployedAt);
+            outcome.complete(new Verification(tenant, apiDetails, revisionId, inactive, polls, elapsed));
+        }
+    }
+
+    private final String publisherRestUrl;
+    private final long minIntervalNanos;
+    private final long maxIntervalNanos;
+    private final long timeoutNanos;
+    private final long permitIntervalNanos;
+    private final DelayQueue<Watch> pollQueue = new DelayQueue<>();
+    private final Map<String, Queue<CompletableFuture<Verification>>> watchesByUnit = new ConcurrentHashMap<>();
+    private final Queue<JSONObject> unverified = new ConcurrentLinkedQueue<>();
+    private final ExecutorService pollers;
+    private final Thread scheduler;
+    private volatile long activationEstimateNanos;
+    private volatile boolean closed;
+
+    /**
+     * Starts a verifier that polls at most {@code requestsPerSecond} times per second, at intervals between the
+     * given bounds, and gives up on a deployment once it has been followed for {@code timeoutSeconds}.
+     */
+    DeploymentVerifier(String publisherRestUrl, long minIntervalSeconds, long maxIntervalSeconds, long timeoutSeconds,
+                       double requestsPerSecond) {
+        if (minIntervalSeconds < 1 || maxIntervalSeconds < minIntervalSeconds || timeoutSeconds < 1
+                || requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("VERIFY.INTERVAL.MIN.SECONDS must be positive and at most " +
+                    "VERIFY.INTERVAL.MAX.SECONDS, and VERIFY.TIMEOUT.SECONDS and VERIFY.MAX.REQUESTS.PER.SECOND " +
+                    "must be positive");
+        }
+        this.publisherRestUrl = publisherRestUrl;
+        this.minIntervalNanos = TimeUnit.SECONDS.toNanos(minIntervalSeconds);
+        this.maxIntervalNanos = TimeUnit.SECONDS.toNanos(maxIntervalSeconds);
+        this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        this.permitIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        this.activationEstimateNanos = minIntervalNanos;
+        this.pollers = Executors.newFixedThreadPool(POLL_WORKERS, new NamedThreadFactory("verify-worker"));
+        this.scheduler = new NamedThreadFactory("verify-scheduler").newThread(this::schedulePolls);
+        scheduler.start();
+    }
+
+    /**
+     * Follows the deployment of a new revision of an API to the given gateway environments. The outcome is
+     * collected by {@link #awaitUnit} for the work unit of the API.
+     */
+    void watch(TokenManager tokens, TenantRedeploymentResult result, JSONObject apiDetails, String revisionId,
+               List<GatewayDeployment> expected) {
+        Watch watch = new Watch(tokens, result.getTenant(), apiDetails, revisionId, expected);
+        watchesByUnit.computeIfAbsent(result.getWorkUnit(), key -> new ConcurrentLinkedQueue<>()).add(watch.outcome);
+        pollQueue.add(watch);
+    }
+
+    /**
+     * Waits until every deployment watched for the work unit is verified or has timed out, and returns their
+     * outcomes. Called once the APIs of the unit have been processed, so no more deployments are watched for it.
+     */
+    List<Verification> awaitUnit(String workUnit) throws InterruptedException {
+        Queue<CompletableFuture<Verification>> watches = watchesByUnit.remove(workUnit);
+        List<Verification> outcomes = new ArrayList<>();
+        if (watches == null) {
+            return outcomes;
+        }
+        for (CompletableFuture<Verification> watch : watches) {
+            try {
+                outcomes.add(watch.get());
+            } catch (ExecutionException e) {
+                logger.error("Unexpected error while verifying deployments of {}: {}", workUnit, e.getCause());
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * Adds an API whose new revision never became active on every expected gateway environment to the report.
+     */
+    void reportUnverified(Verification verification, boolean requeued) {
+        JSONArray inactive = new JSONArray();
+        for (GatewayDeployment deployment : verification.getInactiveDeployments()) {
+            inactive.add(deployment.toString());
+        }
+        JSONObject entry = new JSONObject();
+        entry.put("tenant", verification.getTenant());
+        entry.put("id", verification.getApiId());
+        entry.put("name", verification.getApiDetails().get("name"));
+        entry.put("revision", verification.getRevisionId());
+        entry.put("inactive", inactive);
+        entry.put("polls", verification.polls);
+        entry.put("elapsedMs", verification.elapsedMillis);
+        entry.put("requeued", requeued);
+        unverified.add(entry);
+        logger.error("New revision {} of API: {} with ID: {} in the tenant {} is not active on {} after {} s",
+                verification.getRevisionId(), verification.getApiDetails().get("name"), verification.getApiId(),
+                verification.getTenant(), verification.getInactiveDeployments(),
+                TimeUnit.MILLISECONDS.toSeconds(verification.elapsedMillis));
+    }
+
+    /**
+     * Writes the APIs reported since the last report to the given file, replacing it, and returns their number.
+     */
+    int writeReport(String path, String runId) {
+        JSONArray apis = new JSONArray();
+        JSONObject entry;
+        while ((entry = unverified.poll()) != null) {
+            apis.add(entry);
+        }
+        JSONObject report = new JSONObject();
+        report.put("runId", runId);
+        report.put("created", Instant.now().toString());
+        report.put("unverified", apis);
+
+        Path target = Paths.get(path).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(target.getParent());
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(report.toJSONString());
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Verification report of {} unverified APIs written to {}", apis.size(), path);
+        } catch (IOException e) {
+            logger.error("Unable to write the verification report {}: {}", path, e.getMessage());
+        }
+        return apis.size();
+    }
+
+    private void schedulePolls() {
+        long nextPermit = System.nanoTime();
+        try {
+            while (!closed) {
+                Watch watch = pollQueue.take();
+                // The budget is shared by all watched APIs, so a large backlog delays polls instead of adding load
+                long wait = nextPermit - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                nextPermit = Math.max(nextPermit, System.nanoTime() - permitIntervalNanos) + permitIntervalNanos;
+                pollers.execute(() -> poll(watch));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void poll(Watch watch) {
+        String apiId = (String) watch.apiDetails.get("id");
+        long pollStart = System.nanoTime();
+        try {
+            watch.polls++;
+            List<ApiRevision> revisions = watch.tokens.call(token ->
+                    RestRequests.getRevisionDetails(publisherRestUrl, token, apiId));
+            if (revisions != null) {
+                watch.inactive = inactiveDeployments(revisions, watch.revisionId, watch.expected);
+            }
+        } catch (Exception e) {
+            // A failed poll is retried at the next interval, until the deployment times out
+            logger.warn("Failed to read the deployments of API with ID: {}: {}", apiId, e.getMessage());
+        }
+
+        long now = System.nanoTime();
+        if (watch.inactive.isEmpty()) {
+            long activation = now - watch.deployedAt;
+            activationEstimateNanos = (long) (ACTIVATION_SMOOTHING * activation
+                    + (1 - ACTIVATION_SMOOTHING) * activationEstimateNanos);
+            ApiEventLog.step(watch.tenant, apiId, "verified", watch.revisionId, watch.deployedAt);
+            watch.complete();
+        } else if (now >= watch.deadline || closed) {
+            ApiEventLog.failed(watch.tenant, apiId, "verify", watch.revisionId, pollStart);
+            watch.complete();
+        } else {
+            watch.intervalNanos = Math.min(maxIntervalNanos, watch.intervalNanos * 2);
+            watch.nextPoll = Math.min(now + watch.intervalNanos, watch.deadline);
+            pollQueue.add(watch);
+        }
+    }
+
+    /**
+     * Returns the expected deployments that the new revision isn't active on. Deployments the revision isn't
+     * listed with at all are still being processed by the Publisher.
+     */
+    private static List<GatewayDeployment> inactiveDeployments(List<ApiRevision> revisions, String revisionId,
+                                                               List<GatewayDeployment> expected) {
+        List<GatewayDeployment> active = Collections.emptyList();
+        for (ApiRevision revision : revisions) {
+            if (revisionId.equals(revision.getId())) {
+                active = revision.getDeployments();
+            }
+        }
+        List<GatewayDeployment> inactive = new ArrayList<>();
+        for (GatewayDeployment deployment : expected) {
+            if (active.stream().noneMatch(candidate -> candidate.isActive() && candidate.sameTarget(deployment))) {
+                inactive.add(deployment);
+            }
+        }
+        return inactive;
+    }
+
+    /**
+     * Stops polling. Deployments still being followed are completed as unverified.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.interrupt();
+        pollers.shutdown();
+        for (Watch watch : pollQueue.toArray(new Watch[0])) {
+            if (pollQueue.remove(watch)) {
+                watch.complete();
+            }
+        }
+    }
+}
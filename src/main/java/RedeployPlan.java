@@ -0,0 +1,130 @@
+import utilities.ApiRevision;
+import utilities.GatewayDeployment;
+import utilities.UndeploySpec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Redeployment plan of a single API, derived locally from the deployed revisions that were already fetched. The
+ * plan lists the revisions that have to be undeployed and the deployments that remain once the gateway
+ * environments of the {@link UndeploySpec} have been removed, which are the deployments of the new revision.
+ *
+ * <p>When built from all revisions of the API, the plan also lists the revisions that will not be deployed anywhere
+ * once the undeployment is done, oldest first, so they can be pruned to make room for the new revision.</p>
+ */
+public class RedeployPlan {
+
+    private final List<String> revisionsToUndeploy;
+    private final List<GatewayDeployment> remainingDeployments;
+    private final List<String> prunableRevisions;
+    private final int revisionCount;
+
+    private RedeployPlan(List<String> revisionsToUndeploy, List<GatewayDeployment> remainingDeployments,
+                         List<String> prunableRevisions, int revisionCount) {
+        this.revisionsToUndeploy = Collections.unmodifiableList(revisionsToUndeploy);
+        this.remainingDeployments = Collections.unmodifiableList(remainingDeployments);
+        this.prunableRevisions = Collections.unmodifiableList(prunableRevisions);
+        this.revisionCount = revisionCount;
+    }
+
+    public static RedeployPlan build(List<ApiRevision> revisions, UndeploySpec undeploySpec) {
+        List<String> revisionsToUndeploy = new ArrayList<>();
+        List<GatewayDeployment> remaining = new ArrayList<>();
+        List<ApiRevision> prunable = new ArrayList<>();
+        for (ApiRevision revision : revisions) {
+            boolean undeploy = false;
+            boolean staysDeployed = false;
+            for (GatewayDeployment deployment : revision.getDeployments()) {
+                if (undeploySpec.covers(deployment.getName())) {
+                    undeploy = true;
+                } else {
+                    staysDeployed = true;
+                    addDeployment(remaining, deployment);
+                }
+            }
+            // Revisions that aren't deployed to any of the listed environments don't need an undeploy call
+            if (undeploy) {
+                revisionsToUndeploy.add(revision.getId());
+            }
+            if (!staysDeployed) {
+                prunable.add(revision);
+            }
+        }
+        // The sort is stable, so revisions without a creation time keep the order in which they were listed
+        prunable.sort(Comparator.comparingLong(ApiRevision::getCreatedTime));
+        List<String> prunableRevisions = new ArrayList<>(prunable.size());
+        for (ApiRevision revision : prunable) {
+            prunableRevisions.add(revision.getId());
+        }
+        return new RedeployPlan(revisionsToUndeploy, remaining, prunableRevisions, revisions.size());
+    }
+
+    /**
+     * Recreates a plan that was written to a plan file.
+     */
+    static RedeployPlan restore(List<String> revisionsToUndeploy, List<GatewayDeployment> remainingDeployments,
+                                List<String> prunableRevisions, int revisionCount) {
+        return new RedeployPlan(new ArrayList<>(revisionsToUndeploy), new ArrayList<>(remainingDeployments),
+                new ArrayList<>(prunableRevisions), revisionCount);
+    }
+
+    public List<String> getRevisionsToUndeploy() {
+        return revisionsToUndeploy;
+    }
+
+    /**
+     * Returns the number of revisions the API had when the plan was made.
+     */
+    public int getRevisionCount() {
+        return revisionCount;
+    }
+
+    List<String> getPrunableRevisions() {
+        return prunableRevisions;
+    }
+
+    /**
+     * Returns the oldest revisions that have to be deleted so that a new revision can be created without exceeding
+     * the given maximum number of revisions per API. Only revisions that are not deployed anywhere once the
+     * undeployment is done are returned, so fewer revisions than required may be returned.
+     */
+    public List<String> getRevisionsToPrune(int maxRevisions) {
+        int excess = revisionCount - maxRevisions + 1;
+        return excess > 0 ? prunableRevisions.subList(0, Math.min(excess, prunableRevisions.size()))
+                : Collections.emptyList();
+    }
+
+    /**
+     * Returns the deployments that remain after the undeployment, de-duplicated by gateway environment name and
+     * vhost, so the new revision can be deployed to every environment with one request.
+     */
+    public List<GatewayDeployment> getRemainingDeployments() {
+        return remainingDeployments;
+    }
+
+    /**
+     * Merges the deployments of all revisions, de-duplicated by gateway environment name and vhost.
+     */
+    public static List<GatewayDeployment> mergeDeployments(List<ApiRevision> revisions) {
+        List<GatewayDeployment> merged = new ArrayList<>();
+        for (ApiRevision revision : revisions) {
+            for (GatewayDeployment deployment : revision.getDeployments()) {
+                addDeployment(merged, deployment);
+            }
+        }
+        return merged;
+    }
+
+    private static void addDeployment(List<GatewayDeployment> deployments, GatewayDeployment deployment) {
+        // An API is deployed to a handful of environments, so a linear scan is cheaper than hashing
+        for (GatewayDeployment existing : deployments) {
+            if (existing.sameTarget(deployment)) {
+                return;
+            }
+        }
+        deployments.add(deployment);
+    }
+}
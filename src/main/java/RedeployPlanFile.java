@@ -0,0 +1,295 @@
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import utilities.GatewayDeployment;
+import utilities.StateIndex;
+import utilities.UndeploySpec;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A redeployment plan written by {@code --plan} and carried out by {@code --execute}. The file holds one JSON object
+ * per line: a header naming the gateway environments to be undeployed, followed by the {@link RedeployPlan} of each
+ * API, so the plan can be reviewed, filtered or split with line-based tools and is streamed when executed.
+ */
+public class RedeployPlanFile {
+
+    private static final long VERSION = 1;
+
+    private RedeployPlanFile() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * The plan of a single API.
+     */
+    static final class Entry {
+        private final String tenant;
+        private final JSONObject apiDetails;
+        private final RedeployPlan plan;
+
+        Entry(String tenant, JSONObject apiDetails, RedeployPlan plan) {
+            this.tenant = tenant;
+            this.apiDetails = apiDetails;
+            this.plan = plan;
+        }
+
+        String getTenant() {
+            return tenant;
+        }
+
+        /**
+         * Returns the ID, name and last updated time of the API, as they were listed when the plan was made.
+         */
+        JSONObject getApiDetails() {
+            return apiDetails;
+        }
+
+        RedeployPlan getPlan() {
+            return plan;
+        }
+    }
+
+    /**
+     * Writes a plan file. The plans are written to a temporary file that only replaces the plan file once the plan
+     * is committed, so an interrupted plan phase never leaves an incomplete plan behind.
+     */
+    static final class Writer implements AutoCloseable {
+        private final Path target;
+        private final Path temp;
+        private final BufferedWriter writer;
+        private final boolean allRevisions;
+        private int count;
+        private boolean committed;
+
+        /**
+         * Creates a plan for undeploying the environments of the given specification. When all revisions of the APIs
+         * are listed, and not only the deployed ones, the plans include the revisions that can be pruned.
+         */
+        Writer(String path, UndeploySpec undeploySpec, boolean allRevisions) throws IOException {
+            this.target = Paths.get(path).toAbsolutePath();
+            this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+            this.allRevisions = allRevisions;
+            Files.createDirectories(target.getParent());
+            this.writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8);
+
+            JSONArray environments = new JSONArray();
+            environments.addAll(undeploySpec.getEnvironmentNames());
+            JSONObject header = new JSONObject();
+            header.put("version", VERSION);
+            header.put("created", Instant.now().toString());
+            header.put("undeploy", environments);
+            header.put("allRevisions", allRevisions);
+            writeLine(header);
+        }
+
+        synchronized void write(String tenant, JSONObject apiDetails, RedeployPlan plan) throws IOException {
+            JSONObject api = new JSONObject();
+            api.put("id", apiDetails.get("id"));
+            api.put("name", apiDetails.get("name"));
+            api.put("lastUpdatedTime", StateIndex.lastUpdatedTime(apiDetails));
+
+            JSONArray deployments = new JSONArray();
+            for (GatewayDeployment deployment : plan.getRemainingDeployments()) {
+                JSONObject environment = new JSONObject();
+                environment.put("name", deployment.getName());
+                if (deployment.getVhost() != null) {
+                    environment.put("vhost", deployment.getVhost());
+                }
+                environment.put("displayOnDevportal", deployment.isDisplayOnDevportal());
+                deployments.add(environment);
+            }
+
+            JSONObject entry = new JSONObject();
+            entry.put("tenant", tenant);
+            entry.put("api", api);
+            entry.put("undeploy", toArray(plan.getRevisionsToUndeploy()));
+            entry.put("deploy", deployments);
+            if (allRevisions) {
+                entry.put("revisions", plan.getRevisionCount());
+                entry.put("prunable", toArray(plan.getPrunableRevisions()));
+            }
+            writeLine(entry);
+            count++;
+        }
+
+        synchronized int getCount() {
+            return count;
+        }
+
+        private void writeLine(JSONObject line) throws IOException {
+            writer.write(line.toJSONString());
+            writer.newLine();
+        }
+
+        /**
+         * Completes the plan, replacing any previous plan file.
+         */
+        synchronized void commit() throws IOException {
+            writer.close();
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (!committed) {
+                writer.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        private static JSONArray toArray(List<String> values) {
+            JSONArray array = new JSONArray();
+            array.addAll(values);
+            return array;
+        }
+    }
+
+    /**
+     * Streams the plans of a plan file, reading one API at a time.
+     */
+    static final class Reader implements Iterator<Entry>, AutoCloseable {
+        private final String path;
+        private final BufferedReader reader;
+        private final JSONParser parser = new JSONParser();
+        private final List<String> environmentNames = new ArrayList<>();
+        private final boolean allRevisions;
+        private final String created;
+        private int lineNumber;
+        private Entry next;
+
+        Reader(String path) throws IOException {
+            this.path = path;
+            this.reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8);
+            try {
+                JSONObject header = readLine();
+                if (header == null || !(header.get("undeploy") instanceof JSONArray)
+                        || !Long.valueOf(VERSION).equals(header.get("version"))) {
+                    throw new IllegalArgumentException("Not a version " + VERSION + " plan file: " + path);
+                }
+                for (Object environment : (JSONArray) header.get("undeploy")) {
+                    environmentNames.add((String) environment);
+                }
+                allRevisions = Boolean.TRUE.equals(header.get("allRevisions"));
+                created = (String) header.get("created");
+                next = readEntry();
+            } catch (IOException | RuntimeException e) {
+                reader.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Returns the names of the gateway environments that the plan undeploys.
+         */
+        List<String> getEnvironmentNames() {
+            return environmentNames;
+        }
+
+        /**
+         * Returns whether the plans list the revisions that can be pruned.
+         */
+        boolean listsAllRevisions() {
+            return allRevisions;
+        }
+
+        String getCreated() {
+            return created;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        /**
+         * Returns the next plan. A malformed line fails with an {@link IllegalArgumentException} naming the line.
+         */
+        @Override
+        public Entry next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Entry current = next;
+            try {
+                next = readEntry();
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Unable to read the plan file " + path + ": " + e.getMessage(), e);
+            }
+            return current;
+        }
+
+        private Entry readEntry() throws IOException {
+            JSONObject line = readLine();
+            if (line == null) {
+                return null;
+            }
+            try {
+                JSONObject api = (JSONObject) line.get("api");
+                List<GatewayDeployment> deployments = new ArrayList<>();
+                for (Object value : (JSONArray) line.get("deploy")) {
+                    JSONObject deployment = (JSONObject) value;
+                    deployments.add(new GatewayDeployment((String) deployment.get("name"),
+                            (String) deployment.get("vhost"), Boolean.TRUE.equals(deployment.get("displayOnDevportal"))));
+                }
+                // Plans made from the deployed revisions only have no revisions to prune
+                int revisionCount = line.get("revisions") instanceof Number
+                        ? ((Number) line.get("revisions")).intValue() : 0;
+                RedeployPlan plan = RedeployPlan.restore(strings(line.get("undeploy")), deployments,
+                        strings(line.get("prunable")), revisionCount);
+                if (!(api.get("id") instanceof String) || !(line.get("tenant") instanceof String)) {
+                    throw new IllegalArgumentException("missing tenant or API ID");
+                }
+                return new Entry((String) line.get("tenant"), api, plan);
+            } catch (ClassCastException | NullPointerException | IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid plan in line " + lineNumber + " of " + path + ": " +
+                        e.getMessage());
+            }
+        }
+
+        private JSONObject readLine() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+                lineNumber++;
+            } while (line != null && line.trim().isEmpty());
+            if (line == null) {
+                return null;
+            }
+            try {
+                return (JSONObject) parser.parse(line);
+            } catch (ParseException | ClassCastException e) {
+                throw new IllegalArgumentException("Invalid JSON in line " + lineNumber + " of " + path + ": " + e);
+            }
+        }
+
+        private static List<String> strings(Object value) {
+            List<String> strings = new ArrayList<>();
+            if (value != null) {
+                for (Object element : (JSONArray) value) {
+                    strings.add((String) element);
+                }
+            }
+            return strings;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utilities.NamedThreadFactory;
+import utilities.ReadConfigFile;
+import utilities.TokenManager;
+import utilities.UndeploySpec;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the redeployment as a long-running service. Runs are started at a fixed interval, or earlier when the
+ * trigger file is created or touched. The HTTP client, its connection pool and the access tokens of the tenants are
+ * kept between runs.
+ *
+ * <p>The tenants file and the revisions file are watched for changes. A changed file is validated as soon as it is
+ * written and takes effect at the start of the next run, so a run in progress always uses one consistent version of
+ * each file. A file that fails validation is ignored and the previous version is kept.</p>
+ */
+public class RedeploymentDaemon {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedeploymentDaemon.class);
+
+    // Editors often write a file in several steps, so changes are only read once the file has been quiet for a while
+    private static final long CHANGE_SETTLE_MS = 500;
+    private static final long SHUTDOWN_TIMEOUT_MS = 30000;
+
+    private final boolean resumeFirstRun;
+    private final long intervalMs;
+    private final boolean runOnStart;
+    private final Path tenantsFile;
+    private final Path revisionsFile;
+    private final Path triggerFile;
+    private final LinkedBlockingQueue<String> triggers = new LinkedBlockingQueue<>();
+    private final AtomicReference<JSONObject> pendingTenants = new AtomicReference<>();
+    private final AtomicReference<UndeploySpec> pendingUndeploySpec = new AtomicReference<>();
+    private volatile boolean stopped;
+
+    public RedeploymentDaemon(boolean resumeFirstRun) throws IOException {
+        ReadConfigFile configs = ReadConfigFile.getInstance();
+        this.resumeFirstRun = resumeFirstRun;
+        this.intervalMs = TimeUnit.MINUTES.toMillis(Long.parseLong(property(configs, "DAEMON.INTERVAL.MINUTES", "1440")));
+        this.runOnStart = Boolean.parseBoolean(property(configs, "DAEMON.RUN.ON.START", "true"));
+        this.tenantsFile = Paths.get(DeploymentService.jsonFilePath).toAbsolutePath();
+        this.revisionsFile = Paths.get(DeploymentService.revisonList).toAbsolutePath();
+        this.triggerFile = Paths.get(property(configs, "DAEMON.TRIGGER.FILE", "redeploy.trigger")).toAbsolutePath();
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("DAEMON.INTERVAL.MINUTES must be a positive integer");
+        }
+        if (DeploymentService.leaseDir != null && DeploymentService.shardPlan.isSharded()) {
+            // The leases of a run are kept until the run ID changes, so they can't be shared by recurring runs
+            logger.warn("Lease coordination is not used in service mode, each shard processes only its own tenants");
+            DeploymentService.leaseDir = null;
+        }
+    }
+
+    private static String property(ReadConfigFile configs, String name, String defaultValue) {
+        String value = configs.getProperty(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    /**
+     * Runs the redeployment until the JVM is shut down.
+     */
+    public void run() {
+        JSONObject tenants = DeploymentService.loadTenants();
+        if (tenants == null) {
+            return;
+        }
+        DeploymentService.tokenCache = new ConcurrentHashMap<>();
+        Thread daemonThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stop(daemonThread);
+            // Stopped only now, so the logs of the run that drained in the meantime are not lost
+            DeploymentService.stopLogging();
+        }, "daemon-shutdown"));
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            Set<Path> directories = new HashSet<>();
+            for (Path file : new Path[]{tenantsFile, revisionsFile, triggerFile}) {
+                if (directories.add(file.getParent())) {
+                    file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY);
+                }
+            }
+            Thread watcher = new NamedThreadFactory("config-watcher").newThread(() -> watch(watchService));
+            watcher.start();
+
+            logger.info("Running as a service, redeploying every {} minutes or when {} is touched",
+                    TimeUnit.MILLISECONDS.toMinutes(intervalMs), triggerFile);
+            long nextRun = runOnStart ? System.currentTimeMillis() : System.currentTimeMillis() + intervalMs;
+            boolean resume = resumeFirstRun;
+            while (!stopped) {
+                String trigger = triggers.poll(Math.max(0, nextRun - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if (stopped) {
+                    break;
+                }
+                triggers.clear();
+                tenants = applyPendingChanges(tenants);
+                logger.info("Starting a redeployment run ({})", trigger != null ? trigger : "scheduled");
+                DeploymentService.runRedeployment(tenants, resume);
+                resume = false;
+                nextRun = System.currentTimeMillis() + intervalMs;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.error("Unable to watch the configuration files: {}", e.getMessage(), e);
+        } finally {
+            for (TokenManager tokens : DeploymentService.tokenCache.values()) {
+                tokens.close();
+            }
+            logger.info("Redeployment service stopped");
+        }
+    }
+
+    private void stop(Thread daemonThread) {
+        stopped = true;
+        triggers.offer("shutdown");
+        try {
+            // A run in progress gets some time to finish, after which it is interrupted
+            daemonThread.join(SHUTDOWN_TIMEOUT_MS);
+            if (daemonThread.isAlive()) {
+                daemonThread.interrupt();
+                daemonThread.join(SHUTDOWN_TIMEOUT_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private JSONObject applyPendingChanges(JSONObject tenants) {
+        UndeploySpec undeploySpec = pendingUndeploySpec.getAndSet(null);
+        if (undeploySpec != null) {
+            DeploymentService.undeploySpec = undeploySpec;
+            logger.info("Gateway environments to be undeployed: {}", undeploySpec.getEnvironmentNames());
+        }
+        JSONObject updatedTenants = pendingTenants.getAndSet(null);
+        if (updatedTenants == null) {
+            return tenants;
+        }
+        // Tokens of removed tenants or of tenants whose credentials changed are discarded
+        for (Map.Entry<String, TokenManager> entry : DeploymentService.tokenCache.entrySet()) {
+            if (!Objects.equals(tenants.get(entry.getKey()), updatedTenants.get(entry.getKey()))) {
+                DeploymentService.tokenCache.remove(entry.getKey());
+                entry.getValue().close();
+            }
+        }
+        logger.info("Using the {} tenants of the updated tenants file", updatedTenants.size());
+        return updatedTenants;
+    }
+
+    private void watch(WatchService watchService) {
+        try {
+            while (!stopped) {
+                WatchKey key = watchService.take();
+                Thread.sleep(CHANGE_SETTLE_MS);
+                Set<Path> changed = new HashSet<>();
+                do {
+                    Path directory = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() != StandardWatchEventKinds.OVERFLOW) {
+                            changed.add(directory.resolve((Path) event.context()));
+                        }
+                    }
+                    key.reset();
+                } while ((key = watchService.poll()) != null);
+                onChange(changed);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // The service is shutting down
+        }
+    }
+
+    private void onChange(Set<Path> changed) {
+        if (changed.contains(tenantsFile)) {
+            JSONObject tenants = DeploymentService.loadTenants();
+            if (tenants != null) {
+                pendingTenants.set(tenants);
+                logger.info("Reloaded the tenants file {}, the changes apply from the next run", tenantsFile);
+            } else {
+                logger.error("Ignoring the invalid tenants file {}, the previous tenants are kept", tenantsFile);
+            }
+        }
+        if (changed.contains(revisionsFile)) {
+            try {
+                pendingUndeploySpec.set(UndeploySpec.load(revisionsFile.toString()));
+                logger.info("Reloaded the revisions file {}, the changes apply from the next run", revisionsFile);
+            } catch (IllegalArgumentException | IOException e) {
+                logger.error("Ignoring the invalid revisions file {}, the previous environments are kept: {}",
+                        revisionsFile, e.getMessage());
+            }
+        }
+        if (changed.contains(triggerFile)) {
+            triggers.offer("triggered by " + triggerFile.getFileName());
+        }
+    }
+}
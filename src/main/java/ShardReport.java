@@ -0,0 +1,179 @@
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utilities.ShardPlan;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Reports of the runner processes of a sharded run. Each runner writes the results of the work units it processed
+ * to its own file, and the files of all runners are merged into one report per tenant with {@code --merge-reports}.
+ */
+public class ShardReport {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardReport.class);
+
+    private static final String MERGED_REPORT = "merged-report.json";
+    private static final String[] COUNTERS = {"apis", "redeployed", "failed", "skipped", "notSelected", "unverified"};
+
+    private ShardReport() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * Writes the results of the work units processed by this runner.
+     */
+    static void write(String reportDir, String runId, ShardPlan shardPlan, List<TenantRedeploymentResult> results) {
+        JSONArray units = new JSONArray();
+        for (TenantRedeploymentResult result : results) {
+            JSONObject unit = new JSONObject();
+            unit.put("unit", result.getWorkUnit());
+            unit.put("tenant", result.getTenant());
+            unit.put("status", result.getStatus().name());
+            unit.put("apis", result.getTotalApis());
+            unit.put("redeployed", result.getRedeployedApis());
+            unit.put("failed", result.getFailedApis());
+            unit.put("skipped", result.getSkippedApis());
+            unit.put("notSelected", result.getUnselectedApis());
+            unit.put("unverified", result.getUnverifiedApis());
+            unit.put("elapsedMs", result.getElapsedMillis());
+            unit.put("reason", result.getFailureReason());
+            units.add(unit);
+        }
+        JSONObject report = new JSONObject();
+        report.put("runId", runId);
+        report.put("shard", shardPlan.toString());
+        report.put("units", units);
+
+        Path file = Paths.get(reportDir, runId, "shard-" + shardPlan.getShardIndex() + "-of-" +
+                shardPlan.getShardCount() + ".json");
+        try {
+            writeAtomically(file, report.toJSONString());
+            logger.info("Shard report written to {}", file);
+        } catch (IOException e) {
+            logger.error("Failed to write the shard report {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Merges the reports of all runners of a run into one report per tenant, and logs the work units that no runner
+     * reported.
+     */
+    static void merge(String reportDir, String runId, Set<String> tenants, Set<String> splitTenants) {
+        Path runDir = Paths.get(reportDir, runId);
+        Map<String, JSONObject> merged = new TreeMap<>();
+        Set<String> reportedUnits = new TreeSet<>();
+        int shardCount = 0;
+        try (DirectoryStream<Path> reports = Files.newDirectoryStream(runDir, "shard-*.json")) {
+            for (Path file : reports) {
+                JSONObject report;
+                try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    report = (JSONObject) new JSONParser().parse(reader);
+                }
+                shardCount = Math.max(shardCount, ShardPlan.parse((String) report.get("shard")).getShardCount());
+                for (Object entry : (JSONArray) report.get("units")) {
+                    JSONObject unit = (JSONObject) entry;
+                    reportedUnits.add((String) unit.get("unit"));
+                    mergeUnit(merged.computeIfAbsent((String) unit.get("tenant"), ShardReport::emptyTenant), unit);
+                }
+            }
+        } catch (IOException | ParseException | ClassCastException | IllegalArgumentException e) {
+            logger.error("Unable to read the shard reports in {}: {}", runDir, e.getMessage());
+            return;
+        }
+        if (shardCount == 0) {
+            logger.error("No shard reports found in {}", runDir);
+            return;
+        }
+
+        List<String> missingUnits = new ArrayList<>();
+        for (ShardPlan.WorkUnit unit : new ShardPlan(0, shardCount).workUnits(tenants, splitTenants)) {
+            if (!reportedUnits.contains(unit.getId())) {
+                missingUnits.add(unit.getId());
+            }
+        }
+
+        JSONArray tenantReports = new JSONArray();
+        tenantReports.addAll(merged.values());
+        JSONArray missing = new JSONArray();
+        missing.addAll(missingUnits);
+        JSONObject report = new JSONObject();
+        report.put("runId", runId);
+        report.put("shards", shardCount);
+        report.put("tenants", tenantReports);
+        report.put("missingUnits", missing);
+        Path file = runDir.resolve(MERGED_REPORT);
+        try {
+            writeAtomically(file, report.toJSONString());
+        } catch (IOException e) {
+            logger.error("Failed to write the merged report {}: {}", file, e.getMessage());
+        }
+
+        logger.info("Merged redeployment summary of {} shards:", shardCount);
+        for (JSONObject tenant : merged.values()) {
+            logger.info("Tenant: {} | Status: {} | APIs: {} | Redeployed: {} | Failed: {} | Skipped: {} | " +
+                            "Not selected: {} | Unverified: {}", tenant.get("tenant"), tenant.get("status"),
+                    tenant.get("apis"), tenant.get("redeployed"), tenant.get("failed"), tenant.get("skipped"),
+                    tenant.get("notSelected"), tenant.get("unverified"));
+        }
+        if (!missingUnits.isEmpty()) {
+            logger.error("No shard reported the work units: {}", missingUnits);
+        }
+        logger.info("Merged report written to {}", file);
+    }
+
+    private static JSONObject emptyTenant(String tenant) {
+        JSONObject merged = new JSONObject();
+        merged.put("tenant", tenant);
+        merged.put("status", TenantRedeploymentResult.Status.COMPLETED.name());
+        for (String counter : COUNTERS) {
+            merged.put(counter, 0L);
+        }
+        merged.put("reasons", new JSONArray());
+        return merged;
+    }
+
+    private static void mergeUnit(JSONObject merged, JSONObject unit) {
+        for (String counter : COUNTERS) {
+            // Reports of runners without verification have no unverified count
+            long count = unit.get(counter) instanceof Number ? ((Number) unit.get(counter)).longValue() : 0;
+            merged.put(counter, (Long) merged.get(counter) + count);
+        }
+        // The status of a tenant is the worst status of its units
+        TenantRedeploymentResult.Status status = TenantRedeploymentResult.Status.valueOf((String) unit.get("status"));
+        TenantRedeploymentResult.Status current = TenantRedeploymentResult.Status.valueOf((String) merged.get("status"));
+        if (status.compareTo(current) > 0) {
+            merged.put("status", status.name());
+        }
+        if (unit.get("reason") != null) {
+            ((JSONArray) merged.get("reasons")).add(unit.get("unit") + ": " + unit.get("reason"));
+        }
+    }
+
+    private static void writeAtomically(Path file, String content) throws IOException {
+        Path target = file.toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.createDirectories(target.getParent());
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,141 @@
+import utilities.TenantProgress;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Outcome of the redeployment of a single tenant. Counters are updated by the workers that process the
+ * tenant's APIs, and the final state is reported in the run summary printed by {@link DeploymentService}.
+ */
+public class TenantRedeploymentResult implements TenantProgress {
+
+    public enum Status {
+        COMPLETED,
+        COMPLETED_WITH_FAILURES,
+        FAILED
+    }
+
+    private final String tenant;
+    private final String workUnit;
+    private final long startTime = System.currentTimeMillis();
+    private final AtomicInteger totalApis = new AtomicInteger();
+    private final AtomicInteger redeployedApis = new AtomicInteger();
+    private final AtomicInteger failedApis = new AtomicInteger();
+    private final AtomicInteger skippedApis = new AtomicInteger();
+    private final AtomicInteger unselectedApis = new AtomicInteger();
+    private final AtomicInteger unverifiedApis = new AtomicInteger();
+    private volatile long expectedApis = -1;
+    private volatile long elapsedMillis = -1;
+    private volatile String failureReason;
+
+    public TenantRedeploymentResult(String tenant) {
+        this(tenant, tenant);
+    }
+
+    public TenantRedeploymentResult(String tenant, String workUnit) {
+        this.tenant = tenant;
+        this.workUnit = workUnit;
+    }
+
+    @Override
+    public String getTenant() {
+        return tenant;
+    }
+
+    @Override
+    public String getWorkUnit() {
+        return workUnit;
+    }
+
+    public void setExpectedApis(long expectedApis) {
+        this.expectedApis = expectedApis;
+    }
+
+    @Override
+    public long getExpectedApis() {
+        // APIs filtered out by the selection rules are listed but never redeployed
+        return expectedApis < 0 ? expectedApis : expectedApis - unselectedApis.get();
+    }
+
+    public void apiDiscovered() {
+        totalApis.incrementAndGet();
+    }
+
+    public void apiRedeployed() {
+        redeployedApis.incrementAndGet();
+    }
+
+    public void apiFailed() {
+        failedApis.incrementAndGet();
+    }
+
+    public void apiSkipped() {
+        skippedApis.incrementAndGet();
+    }
+
+    /**
+     * Records a listed API that doesn't match the selection rules of the run.
+     */
+    public void apiNotSelected() {
+        unselectedApis.incrementAndGet();
+    }
+
+    /**
+     * Records a redeployed API whose new revision never became active on every gateway environment.
+     */
+    public void apiUnverified() {
+        unverifiedApis.incrementAndGet();
+    }
+
+    /**
+     * Marks the whole tenant as failed, e.g. when no access token or API list could be obtained.
+     */
+    public void fail(String reason) {
+        this.failureReason = reason;
+    }
+
+    public void finish() {
+        elapsedMillis = System.currentTimeMillis() - startTime;
+    }
+
+    public Status getStatus() {
+        if (failureReason != null) {
+            return Status.FAILED;
+        }
+        return failedApis.get() > 0 || unverifiedApis.get() > 0 ? Status.COMPLETED_WITH_FAILURES : Status.COMPLETED;
+    }
+
+    public int getTotalApis() {
+        return totalApis.get();
+    }
+
+    @Override
+    public int getRedeployedApis() {
+        return redeployedApis.get();
+    }
+
+    @Override
+    public int getFailedApis() {
+        return failedApis.get();
+    }
+
+    @Override
+    public int getSkippedApis() {
+        return skippedApis.get();
+    }
+
+    public int getUnselectedApis() {
+        return unselectedApis.get();
+    }
+
+    public int getUnverifiedApis() {
+        return unverifiedApis.get();
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public String getFailureReason() {
+        return failureReason;
+    }
+}
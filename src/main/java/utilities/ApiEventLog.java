@@ -0,0 +1,71 @@
+package utilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Structured events of the steps of every API, written to the {@code api.events} logger as {@code key=value} pairs
+ * that can be filtered and aggregated without parsing free text, e.g.
+ * {@code tenant=abc.com api=2f3a... step=deploy revision=9c1e... latencyMs=42}.
+ *
+ * <p>Events are only built when the logger is enabled and the API is sampled, so a disabled or sampled-out event
+ * costs a level check and a hash lookup. With {@code LOG.API.SAMPLE.EVERY} set to N, the events of about one API in
+ * N are written; all steps of a sampled API are written, and failures are always written.</p>
+ */
+public final class ApiEventLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApiEventLog.class);
+    private static final Logger events = LoggerFactory.getLogger("api.events");
+
+    private static final int SAMPLE_EVERY = loadSampleEvery();
+
+    private ApiEventLog() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    private static int loadSampleEvery() {
+        try {
+            String value = ReadConfigFile.getInstance().getProperty("LOG.API.SAMPLE.EVERY");
+            return value == null || value.trim().isEmpty() ? 1 : Math.max(1, Integer.parseInt(value.trim()));
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Unable to read LOG.API.SAMPLE.EVERY, the events of every API are logged");
+            return 1;
+        }
+    }
+
+    /**
+     * Returns whether the events of the API are written.
+     */
+    public static boolean isEnabled(String apiId) {
+        // The hash of the API ID is cached by the string, and keeps all events of an API together
+        return events.isInfoEnabled() && (SAMPLE_EVERY == 1 || Math.floorMod(apiId.hashCode(), SAMPLE_EVERY) == 0);
+    }
+
+    /**
+     * Records a completed step of an API. The latency is the time since {@code startNanos}, from
+     * {@link System#nanoTime()}.
+     */
+    public static void step(String tenant, String apiId, String step, String revisionId, long startNanos) {
+        if (isEnabled(apiId)) {
+            events.info("tenant={} api={} step={} revision={} latencyMs={}", tenant, apiId, step,
+                    revisionId != null ? revisionId : "-", elapsedMillis(startNanos));
+        }
+    }
+
+    /**
+     * Records a failed step of an API, whether the API is sampled or not.
+     */
+    public static void failed(String tenant, String apiId, String step, String revisionId, long startNanos) {
+        if (events.isWarnEnabled()) {
+            events.warn("tenant={} api={} step={} revision={} latencyMs={} outcome=failed", tenant, apiId, step,
+                    revisionId != null ? revisionId : "-", elapsedMillis(startNanos));
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,129 @@
+package utilities;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Lazily iterates over all APIs of a tenant by following the {@code pagination} details of the Publisher API list.
+ * Only the current page is held in memory, and the following page is fetched in the background while the APIs of
+ * the current page are being consumed.
+ */
+public class ApiListIterator implements Iterator<JSONObject> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApiListIterator.class);
+
+    private final String url;
+    private final TokenManager tokens;
+    private final int limit;
+    private final String sortBy;
+    private final String orderBy;
+    private final String query;
+
+    private Iterator<JSONObject> currentPage = Collections.emptyIterator();
+    private CompletableFuture<JSONObject> nextPage;
+    private String pageToken;
+    private int nextOffset;
+    private long total = -1;
+
+    public ApiListIterator(String url, TokenManager tokens, String limit, String offset, String sortBy, String orderBy) {
+        this(url, tokens, limit, offset, sortBy, orderBy, null);
+    }
+
+    /**
+     * Iterates over the APIs matching the given Publisher search query, or over all APIs if the query is null.
+     */
+    public ApiListIterator(String url, TokenManager tokens, String limit, String offset, String sortBy, String orderBy,
+                           String query) {
+        this.url = url;
+        this.tokens = tokens;
+        this.limit = Integer.parseInt(limit);
+        this.sortBy = sortBy;
+        this.orderBy = orderBy;
+        this.query = query;
+        this.nextOffset = Integer.parseInt(offset);
+        this.nextPage = fetchPage(nextOffset);
+    }
+
+    /**
+     * Returns the total number of APIs reported by the Publisher, or -1 if no page has been loaded yet.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!currentPage.hasNext()) {
+            if (nextPage == null) {
+                return false;
+            }
+            loadNextPage();
+        }
+        return true;
+    }
+
+    @Override
+    public JSONObject next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentPage.next();
+    }
+
+    private void loadNextPage() {
+        int pageOffset = nextOffset;
+        JSONObject response;
+        try {
+            response = nextPage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrieving the API list at offset " + pageOffset, e);
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof UnauthorizedException)) {
+                throw new IllegalStateException("Failed to retrieve the API list at offset " + pageOffset, e.getCause());
+            }
+            // The token was rejected while the page was being prefetched, so refresh it and fetch the page again
+            response = RestRequests.getAPIListPage(url, tokens.invalidate(pageToken), String.valueOf(limit),
+                    String.valueOf(pageOffset), sortBy, orderBy, query);
+        }
+        if (response == null) {
+            throw new IllegalStateException("Failed to retrieve the API list at offset " + pageOffset);
+        }
+
+        List<JSONObject> apis = response.get("list") instanceof ArrayList
+                ? (ArrayList<JSONObject>) response.get("list") : Collections.emptyList();
+        JSONObject pagination = (JSONObject) response.get("pagination");
+        if (pagination != null && pagination.get("total") instanceof Number) {
+            total = ((Number) pagination.get("total")).longValue();
+        } else if (total < 0) {
+            total = apis.size();
+        }
+
+        nextOffset = pageOffset + apis.size();
+        boolean hasMore = !apis.isEmpty() && (pagination != null && isNotEmpty(pagination.get("next"))
+                || nextOffset < total);
+        // Request the following page before handing out the current one, so listing overlaps with the redeployment
+        nextPage = hasMore ? fetchPage(nextOffset) : null;
+        currentPage = apis.iterator();
+        logger.debug("Loaded {} APIs at offset {} of {}", apis.size(), pageOffset, total);
+    }
+
+    private CompletableFuture<JSONObject> fetchPage(int offset) {
+        pageToken = tokens.getAccessToken();
+        return RestRequests.getAPIListPageAsync(url, pageToken, String.valueOf(limit), String.valueOf(offset),
+                sortBy, orderBy, query);
+    }
+
+    private static boolean isNotEmpty(Object value) {
+        return value != null && !value.toString().isEmpty();
+    }
+}
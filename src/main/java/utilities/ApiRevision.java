@@ -0,0 +1,48 @@
+package utilities;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Revision of an API together with the gateway environments it is deployed to and the time it was created.
+ */
+public final class ApiRevision {
+
+    private final String id;
+    private final List<GatewayDeployment> deployments;
+    private final long createdTime;
+
+    public ApiRevision(String id, List<GatewayDeployment> deployments) {
+        this(id, deployments, 0);
+    }
+
+    public ApiRevision(String id, List<GatewayDeployment> deployments, long createdTime) {
+        this.id = id;
+        this.deployments = Collections.unmodifiableList(deployments);
+        this.createdTime = createdTime;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public List<GatewayDeployment> getDeployments() {
+        return deployments;
+    }
+
+    public boolean isDeployed() {
+        return !deployments.isEmpty();
+    }
+
+    /**
+     * Returns the creation time in milliseconds since the epoch, or 0 if the Publisher didn't report it.
+     */
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
+    @Override
+    public String toString() {
+        return id + deployments;
+    }
+}
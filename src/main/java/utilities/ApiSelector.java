@@ -0,0 +1,168 @@
+package utilities;
+
+import org.json.simple.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Rules selecting the APIs to be redeployed, read from the {@code SELECT.*} configuration properties. Rules that
+ * the Publisher can evaluate are sent as the {@code query} of the API list request, so fewer APIs are listed. The
+ * remaining rules are checked against each listed API before any of its revisions are retrieved, except for the
+ * gateway environment rule, which is checked against the retrieved revisions before anything is changed.
+ *
+ * <p>An API is selected only if it matches every configured rule. Without any rules, every API is selected.</p>
+ */
+public class ApiSelector {
+
+    private final Pattern namePattern;
+    private final Pattern contextPattern;
+    private final Set<String> tags;
+    private final Set<String> lifecycleStates;
+    private final Set<String> gatewayEnvironments;
+
+    ApiSelector(String nameRegex, String contextRegex, Collection<String> tags, Collection<String> lifecycleStates,
+                Collection<String> gatewayEnvironments) {
+        this.namePattern = nameRegex != null ? Pattern.compile(nameRegex) : null;
+        this.contextPattern = contextRegex != null ? Pattern.compile(contextRegex) : null;
+        this.tags = Collections.unmodifiableSet(new LinkedHashSet<>(tags));
+        this.lifecycleStates = Collections.unmodifiableSet(new LinkedHashSet<>(upperCase(lifecycleStates)));
+        this.gatewayEnvironments = Collections.unmodifiableSet(new LinkedHashSet<>(gatewayEnvironments));
+    }
+
+    /**
+     * Reads the selection rules from the configuration.
+     *
+     * @throws IllegalArgumentException if a regular expression is invalid
+     */
+    public static ApiSelector load() throws IOException {
+        ReadConfigFile configs = ReadConfigFile.getInstance();
+        return new ApiSelector(
+                stringProperty(configs, "SELECT.NAME.REGEX"),
+                stringProperty(configs, "SELECT.CONTEXT.REGEX"),
+                listProperty(configs, "SELECT.TAGS"),
+                listProperty(configs, "SELECT.LIFECYCLE.STATES"),
+                listProperty(configs, "SELECT.GATEWAY.ENVIRONMENTS"));
+    }
+
+    private static String stringProperty(ReadConfigFile configs, String name) {
+        String value = configs.getProperty(name);
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    private static List<String> listProperty(ReadConfigFile configs, String name) {
+        String value = stringProperty(configs, name);
+        List<String> values = new ArrayList<>();
+        if (value != null) {
+            for (String item : value.split(",")) {
+                if (!item.trim().isEmpty()) {
+                    values.add(item.trim());
+                }
+            }
+        }
+        return values;
+    }
+
+    private static List<String> upperCase(Collection<String> values) {
+        List<String> upperCased = new ArrayList<>();
+        for (String value : values) {
+            upperCased.add(value.toUpperCase());
+        }
+        return upperCased;
+    }
+
+    public boolean isEmpty() {
+        return namePattern == null && contextPattern == null && tags.isEmpty() && lifecycleStates.isEmpty()
+                && gatewayEnvironments.isEmpty();
+    }
+
+    /**
+     * Returns the search query that narrows down the API list on the Publisher, or null if no rule can be
+     * evaluated by the Publisher. The Publisher matches a single tag and a single lifecycle state, so rules with
+     * several values are only checked locally.
+     */
+    public String getServerQuery() {
+        List<String> criteria = new ArrayList<>();
+        if (tags.size() == 1) {
+            criteria.add("tag:" + tags.iterator().next());
+        }
+        if (lifecycleStates.size() == 1) {
+            criteria.add("status:" + lifecycleStates.iterator().next());
+        }
+        return criteria.isEmpty() ? null : String.join(" ", criteria);
+    }
+
+    /**
+     * Returns whether a listed API matches the rules that can be checked without retrieving its revisions. The
+     * rules pushed down to the Publisher are checked again, in case the Publisher ignored the query.
+     */
+    public boolean matches(JSONObject apiDetails) {
+        if (namePattern != null && !matches(namePattern, apiDetails.get("name"))) {
+            return false;
+        }
+        if (contextPattern != null && !matches(contextPattern, apiDetails.get("context"))) {
+            return false;
+        }
+        if (!lifecycleStates.isEmpty()) {
+            Object state = apiDetails.get("lifeCycleStatus");
+            if (state == null || !lifecycleStates.contains(state.toString().toUpperCase())) {
+                return false;
+            }
+        }
+        if (!tags.isEmpty()) {
+            Object apiTags = apiDetails.get("tags");
+            if (!(apiTags instanceof List) || Collections.disjoint(tags, (List<?>) apiTags)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether any of the given revisions is deployed to one of the selected gateway environments.
+     */
+    public boolean matchesDeployments(List<ApiRevision> revisions) {
+        if (gatewayEnvironments.isEmpty()) {
+            return true;
+        }
+        for (ApiRevision revision : revisions) {
+            for (GatewayDeployment deployment : revision.getDeployments()) {
+                if (gatewayEnvironments.contains(deployment.getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(Pattern pattern, Object value) {
+        return value != null && pattern.matcher(value.toString()).find();
+    }
+
+    @Override
+    public String toString() {
+        List<String> rules = new ArrayList<>();
+        if (namePattern != null) {
+            rules.add("name=~" + namePattern);
+        }
+        if (contextPattern != null) {
+            rules.add("context=~" + contextPattern);
+        }
+        if (!tags.isEmpty()) {
+            rules.add("tags in " + tags);
+        }
+        if (!lifecycleStates.isEmpty()) {
+            rules.add("lifecycle state in " + lifecycleStates);
+        }
+        if (!gatewayEnvironments.isEmpty()) {
+            rules.add("gateway environment in " + gatewayEnvironments);
+        }
+        return rules.isEmpty() ? "all APIs" : String.join(", ", rules);
+    }
+}
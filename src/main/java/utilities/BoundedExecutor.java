@@ -0,0 +1,50 @@
+package utilities;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed-size executor that blocks submitters once the configured number of tasks are in flight. Blocking the
+ * producer keeps the number of queued tasks (and therefore memory) bounded regardless of how many tasks are
+ * produced in total.
+ */
+public class BoundedExecutor {
+
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final int limit;
+
+    public BoundedExecutor(String name, int limit) {
+        this.limit = limit;
+        this.executor = Executors.newFixedThreadPool(limit, new NamedThreadFactory(name));
+        this.inFlight = new Semaphore(limit);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Submits a task, waiting until one of the in-flight slots becomes free.
+     */
+    public CompletableFuture<Void> submit(Runnable task) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            return CompletableFuture.runAsync(task, executor).whenComplete((ignored, error) -> inFlight.release());
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
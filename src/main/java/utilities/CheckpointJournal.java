@@ -0,0 +1,194 @@
+package utilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only journal of the progress of every API, used to resume a run that was interrupted. Each line records
+ * the tenant, the API ID, the last completed step and the new revision ID.
+ *
+ * <p>Records are buffered and written to disk in batches. Steps that must not be repeated, such as the creation
+ * of a revision, are recorded durably: the caller waits until the journal has been synced, and a single sync
+ * covers every record written by concurrent workers up to that point.</p>
+ */
+public class CheckpointJournal implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CheckpointJournal.class);
+
+    private static final String SEPARATOR = "\t";
+    private static final String NO_REVISION = "-";
+    private static final int SYNC_BATCH_SIZE = 256;
+    private static final long SYNC_INTERVAL_MS = 1000;
+
+    public enum Step {
+        UNDEPLOYED,
+        REVISION_CREATED,
+        DEPLOYED,
+        // The new revision didn't become active on every gateway environment, so the API is redeployed again
+        UNVERIFIED,
+        SKIPPED;
+
+        public boolean isFinal() {
+            return this == DEPLOYED || this == SKIPPED;
+        }
+    }
+
+    /**
+     * Last recorded step of an API.
+     */
+    public static final class Checkpoint {
+        private final Step step;
+        private final String revisionId;
+
+        Checkpoint(Step step, String revisionId) {
+            this.step = step;
+            this.revisionId = revisionId;
+        }
+
+        public Step getStep() {
+            return step;
+        }
+
+        public String getRevisionId() {
+            return revisionId;
+        }
+    }
+
+    private final Map<String, Checkpoint> checkpoints = new ConcurrentHashMap<>();
+    private final FileOutputStream output;
+    private final FileChannel channel;
+    private final Writer writer;
+    private final ScheduledExecutorService syncExecutor;
+    private final Object syncLock = new Object();
+    private long writtenRecords;
+    private volatile long syncedRecords;
+
+    /**
+     * Opens the journal at the given path. When resuming, the recorded checkpoints are loaded and new records are
+     * appended; otherwise the journal is started afresh.
+     */
+    public CheckpointJournal(String path, boolean resume) throws IOException {
+        File file = new File(path);
+        if (resume && file.exists()) {
+            load(file);
+            logger.info("Loaded {} API checkpoints from {}", checkpoints.size(), path);
+        }
+        output = new FileOutputStream(file, resume);
+        channel = output.getChannel();
+        writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        syncExecutor = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("checkpoint-sync"));
+        syncExecutor.scheduleWithFixedDelay(this::syncQuietly, SYNC_INTERVAL_MS, SYNC_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void load(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(SEPARATOR);
+                if (fields.length != 4) {
+                    // A partially written last line is expected after a crash
+                    logger.warn("Ignoring incomplete checkpoint record: {}", line);
+                    continue;
+                }
+                try {
+                    String revisionId = NO_REVISION.equals(fields[3]) ? null : fields[3];
+                    checkpoints.put(key(fields[0], fields[1]), new Checkpoint(Step.valueOf(fields[2]), revisionId));
+                } catch (IllegalArgumentException e) {
+                    logger.warn("Ignoring invalid checkpoint record: {}", line);
+                }
+            }
+        }
+    }
+
+    public Checkpoint getCheckpoint(String tenant, String apiId) {
+        return checkpoints.get(key(tenant, apiId));
+    }
+
+    /**
+     * Records a step. The record is written to disk with the next batch.
+     */
+    public void record(String tenant, String apiId, Step step, String revisionId) throws IOException {
+        boolean syncNow;
+        synchronized (this) {
+            append(tenant, apiId, step, revisionId);
+            syncNow = writtenRecords - syncedRecords >= SYNC_BATCH_SIZE;
+        }
+        if (syncNow) {
+            sync();
+        }
+    }
+
+    /**
+     * Records a step and waits until it has been synced to disk.
+     */
+    public void recordDurably(String tenant, String apiId, Step step, String revisionId) throws IOException {
+        long recordNumber;
+        synchronized (this) {
+            recordNumber = append(tenant, apiId, step, revisionId);
+        }
+        synchronized (syncLock) {
+            if (syncedRecords < recordNumber) {
+                sync();
+            }
+        }
+    }
+
+    private long append(String tenant, String apiId, Step step, String revisionId) throws IOException {
+        checkpoints.put(key(tenant, apiId), new Checkpoint(step, revisionId));
+        writer.write(tenant + SEPARATOR + apiId + SEPARATOR + step + SEPARATOR +
+                (revisionId != null ? revisionId : NO_REVISION) + "\n");
+        return ++writtenRecords;
+    }
+
+    private void sync() throws IOException {
+        synchronized (syncLock) {
+            long written;
+            synchronized (this) {
+                writer.flush();
+                written = writtenRecords;
+            }
+            if (syncedRecords < written) {
+                channel.force(false);
+                syncedRecords = written;
+            }
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            logger.error("Failed to sync the checkpoint journal: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        syncExecutor.shutdown();
+        sync();
+        writer.close();
+    }
+
+    private static String key(String tenant, String apiId) {
+        return tenant + SEPARATOR + apiId;
+    }
+}
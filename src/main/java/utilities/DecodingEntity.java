@@ -0,0 +1,136 @@
+package utilities;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A response entity that decodes a gzip or deflate content encoding while it is read, so a compressed body is never
+ * buffered, and that counts the bytes received on the wire and the bytes of the decoded body. Bodies in any other
+ * encoding are passed through unchanged.
+ */
+final class DecodingEntity extends HttpEntityWrapper {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String encoding;
+    private CountingInputStream wire;
+    private CountingInputStream decoded;
+
+    DecodingEntity(HttpEntity entity) {
+        super(entity);
+        Header header = entity.getContentEncoding();
+        String value = header != null ? header.getValue().trim().toLowerCase(Locale.ROOT) : "";
+        this.encoding = "gzip".equals(value) || "x-gzip".equals(value) || "deflate".equals(value) ? value : null;
+    }
+
+    /**
+     * Returns whether the body is decoded from a compressed encoding.
+     */
+    boolean isCompressed() {
+        return encoding != null;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        // The content is a stream of the connection, so it is opened once and handed out to every caller
+        if (decoded == null) {
+            wire = new CountingInputStream(wrappedEntity.getContent());
+            InputStream content = encoding == null ? wire
+                    : "deflate".equals(encoding) ? new DeflateInputStream(wire)
+                    : new GZIPInputStream(wire, BUFFER_SIZE);
+            decoded = new CountingInputStream(content) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    if (!closed) {
+                        closed = true;
+                        // The rest of the body is read anyway to reuse the connection, and is counted on the way
+                        wire.drain();
+                        super.close();
+                    }
+                }
+            };
+        }
+        return decoded;
+    }
+
+    @Override
+    public long getContentLength() {
+        return encoding == null ? super.getContentLength() : -1;
+    }
+
+    @Override
+    public Header getContentEncoding() {
+        return encoding == null ? super.getContentEncoding() : null;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try (InputStream content = getContent()) {
+            content.transferTo(out);
+        }
+    }
+
+    long getWireBytes() {
+        return wire != null ? wire.count : 0;
+    }
+
+    long getDecodedBytes() {
+        return decoded != null ? decoded.count : 0;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = in.read();
+            if (value != -1) {
+                count++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = in.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        void drain() throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // Counted by read
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package utilities;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Deployment of a revision to a gateway environment and vhost. Environment names and vhosts repeat across every
+ * API of a run, so they are interned and shared by all instances.
+ */
+public final class GatewayDeployment {
+
+    private static final ConcurrentMap<String, String> NAMES = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final String vhost;
+    private final boolean displayOnDevportal;
+    private final boolean active;
+
+    public GatewayDeployment(String name, String vhost, boolean displayOnDevportal) {
+        this(name, vhost, displayOnDevportal, true);
+    }
+
+    public GatewayDeployment(String name, String vhost, boolean displayOnDevportal, boolean active) {
+        this.name = intern(name);
+        this.vhost = intern(vhost);
+        this.displayOnDevportal = displayOnDevportal;
+        this.active = active;
+    }
+
+    private static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String existing = NAMES.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    /**
+     * Returns the gateway environment name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getVhost() {
+        return vhost;
+    }
+
+    public boolean isDisplayOnDevportal() {
+        return displayOnDevportal;
+    }
+
+    /**
+     * Returns whether the gateways of the environment have acknowledged the deployment. Deployments pending
+     * approval, rejected or not yet synced to the gateways are not active. This is state rather than a deployment
+     * target, so it isn't part of {@link #equals}.
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Returns whether both deployments target the same gateway environment and vhost.
+     */
+    public boolean sameTarget(GatewayDeployment other) {
+        return name.equals(other.name) && Objects.equals(vhost, other.vhost);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GatewayDeployment)) {
+            return false;
+        }
+        GatewayDeployment other = (GatewayDeployment) o;
+        return displayOnDevportal == other.displayOnDevportal && sameTarget(other);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, vhost, displayOnDevportal);
+    }
+
+    @Override
+    public String toString() {
+        return name + (vhost != null ? "/" + vhost : "");
+    }
+}
@@ -0,0 +1,229 @@
+package utilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces the deploy-revision calls per gateway environment, so a bulk redeployment doesn't trigger an artifact sync
+ * storm on the gateways. Each environment has a cap on concurrent deployments and on deployments per second, and
+ * the deployments can be grouped into waves with a pause between them to let the gateways catch up.
+ *
+ * <p>Limits apply to the environment name, and can be overridden for an environment or for a vhost of an
+ * environment in {@code GATEWAY.DEPLOY.LIMITS}, e.g. {@code External:2:0.5,Internal@api.internal.com:8:4} for
+ * {@code name[@vhost]:maxConcurrent:maxPerSecond}. A limit of 0 means unlimited.</p>
+ */
+public class GatewayThrottle {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatewayThrottle.class);
+
+    private static GatewayThrottle instance;
+
+    /**
+     * Permission to deploy to a set of gateway environments, released when the deployment completes.
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final class Limit {
+        private final int maxConcurrent;
+        private final double maxPerSecond;
+
+        Limit(int maxConcurrent, double maxPerSecond) {
+            this.maxConcurrent = maxConcurrent;
+            this.maxPerSecond = maxPerSecond;
+        }
+    }
+
+    /**
+     * Concurrency and rate state of a single gateway environment or vhost.
+     */
+    private static final class Gate {
+        private final Semaphore concurrency;
+        private final long intervalNanos;
+        private long nextSlot;
+
+        Gate(Limit limit) {
+            this.concurrency = limit.maxConcurrent > 0 ? new Semaphore(limit.maxConcurrent, true) : null;
+            this.intervalNanos = limit.maxPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / limit.maxPerSecond) : 0;
+        }
+
+        /**
+         * Reserves the next free slot of the rate limit and returns the time to wait for it, in nanoseconds.
+         */
+        synchronized long reserveSlot() {
+            if (intervalNanos == 0) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextSlot);
+            nextSlot = slot + intervalNanos;
+            return slot - now;
+        }
+    }
+
+    private final Limit defaultLimit;
+    private final Map<String, Limit> overrides;
+    private final ConcurrentMap<String, Gate> gates = new ConcurrentHashMap<>();
+    private final int waveSize;
+    private final long wavePauseMs;
+
+    private final Object waveLock = new Object();
+    private int waveStarted;
+    private int waveFinished;
+    private int waveNumber = 1;
+    private long waveOpensAt;
+
+    GatewayThrottle(Limit defaultLimit, Map<String, Limit> overrides, int waveSize, long wavePauseMs) {
+        this.defaultLimit = defaultLimit;
+        this.overrides = overrides;
+        this.waveSize = waveSize;
+        this.wavePauseMs = wavePauseMs;
+    }
+
+    public static synchronized GatewayThrottle getInstance() {
+        if (instance == null) {
+            instance = createThrottle();
+        }
+        return instance;
+    }
+
+    private static GatewayThrottle createThrottle() {
+        try {
+            ReadConfigFile configs = ReadConfigFile.getInstance();
+            Limit defaultLimit = new Limit(
+                    Integer.parseInt(property(configs, "GATEWAY.MAX.CONCURRENT.DEPLOYS", "0")),
+                    Double.parseDouble(property(configs, "GATEWAY.MAX.DEPLOYS.PER.SECOND", "0")));
+            return new GatewayThrottle(defaultLimit, parseOverrides(property(configs, "GATEWAY.DEPLOY.LIMITS", "")),
+                    Integer.parseInt(property(configs, "WAVE.SIZE", "0")),
+                    TimeUnit.SECONDS.toMillis(Long.parseLong(property(configs, "WAVE.PAUSE.SECONDS", "0"))));
+        } catch (IOException e) {
+            logger.warn("Unable to read the gateway throttling configuration, gateway deployments are not throttled");
+            return new GatewayThrottle(new Limit(0, 0), Collections.emptyMap(), 0, 0);
+        }
+    }
+
+    private static String property(ReadConfigFile configs, String name, String defaultValue) {
+        String value = configs.getProperty(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    private static Map<String, Limit> parseOverrides(String value) {
+        Map<String, Limit> overrides = new HashMap<>();
+        for (String entry : value.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            // Environment names may not contain a colon, so the limits are taken from the end of the entry
+            String[] fields = entry.trim().split(":");
+            if (fields.length != 3) {
+                throw new IllegalArgumentException("Invalid GATEWAY.DEPLOY.LIMITS entry: " + entry.trim() +
+                        ", expected name[@vhost]:maxConcurrent:maxPerSecond");
+            }
+            overrides.put(fields[0].trim(), new Limit(Integer.parseInt(fields[1].trim()),
+                    Double.parseDouble(fields[2].trim())));
+        }
+        return overrides;
+    }
+
+    /**
+     * Waits until a revision may be deployed to the given environments. The returned permit must be closed once
+     * the deploy-revision call has completed.
+     */
+    public Permit acquire(List<GatewayDeployment> deployments) throws InterruptedException {
+        // Gates are always acquired in the same order, so deployments sharing environments can't deadlock
+        TreeSet<String> keys = new TreeSet<>();
+        for (GatewayDeployment deployment : deployments) {
+            keys.add(gateKey(deployment));
+        }
+        enterWave();
+        List<Gate> acquired = new ArrayList<>(keys.size());
+        try {
+            long waitNanos = 0;
+            for (String key : keys) {
+                Gate gate = gates.computeIfAbsent(key, this::createGate);
+                if (gate.concurrency != null) {
+                    gate.concurrency.acquire();
+                }
+                acquired.add(gate);
+                waitNanos = Math.max(waitNanos, gate.reserveSlot());
+            }
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            release(acquired);
+            throw e;
+        }
+        return () -> release(acquired);
+    }
+
+    private void release(List<Gate> acquired) {
+        for (Gate gate : acquired) {
+            if (gate.concurrency != null) {
+                gate.concurrency.release();
+            }
+        }
+        leaveWave();
+    }
+
+    private String gateKey(GatewayDeployment deployment) {
+        String vhostKey = deployment.getName() + "@" + deployment.getVhost();
+        return deployment.getVhost() != null && overrides.containsKey(vhostKey) ? vhostKey : deployment.getName();
+    }
+
+    private Gate createGate(String key) {
+        return new Gate(overrides.getOrDefault(key, defaultLimit));
+    }
+
+    private void enterWave() throws InterruptedException {
+        if (waveSize <= 0) {
+            return;
+        }
+        synchronized (waveLock) {
+            while (true) {
+                long pause = waveOpensAt - System.currentTimeMillis();
+                if (pause > 0) {
+                    waveLock.wait(pause);
+                } else if (waveStarted >= waveSize) {
+                    waveLock.wait();
+                } else {
+                    waveStarted++;
+                    return;
+                }
+            }
+        }
+    }
+
+    private void leaveWave() {
+        if (waveSize <= 0) {
+            return;
+        }
+        synchronized (waveLock) {
+            waveFinished++;
+            // The next wave only starts once every deployment of the current wave has completed
+            if (waveFinished >= waveSize) {
+                logger.info("Wave {} of {} gateway deployments completed{}", waveNumber, waveSize,
+                        wavePauseMs > 0 ? ", pausing for " + wavePauseMs / 1000 + " s" : "");
+                waveNumber++;
+                waveStarted = 0;
+                waveFinished = 0;
+                waveOpensAt = System.currentTimeMillis() + wavePauseMs;
+                waveLock.notifyAll();
+            }
+        }
+    }
+}
@@ -1,14 +1,20 @@
 package utilities;
 
+import org.apache.http.HttpHost;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.utils.URIUtils;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.ssl.SSLContexts;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,8 +25,12 @@ import javax.net.ssl.TrustManagerFactory;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
 import java.security.*;
 import java.security.cert.CertificateException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class HttpClientManager {
 
@@ -29,6 +39,12 @@ public class HttpClientManager {
     private static CloseableHttpClient httpClientInstance;
     private static final int CONNECTION_TIMEOUT_MS = 5000; // 5 seconds
     private static final int SOCKET_TIMEOUT_MS = 30000; // 30 seconds
+    private static final int DEFAULT_POOL_SIZE = 10;
+    private static final int VALIDATE_AFTER_INACTIVITY_MS = 2000;
+    private static PoolingHttpClientConnectionManager connectionManager;
+    private static ScheduledExecutorService poolStatsLogger;
+    private static HttpRoute tokenRoute;
+    private static HttpRoute publisherRoute;
     static String KEY_STORE_PATH = "";
     static String KEY_STORE_PASSWORD = "";
 
@@ -45,6 +61,28 @@ public class HttpClientManager {
         return httpClientInstance;
     }
 
+    /**
+     * Returns the number of pooled connections available to the client, read from {@code HTTP.POOL.SIZE}.
+     * The request concurrency of the redeployment pipeline is derived from this value so that workers never
+     * wait on the pool for a connection.
+     */
+    public static int getPoolSize() {
+        try {
+            String poolSize = ReadConfigFile.getInstance().getProperty("HTTP.POOL.SIZE");
+            if (poolSize == null || poolSize.trim().isEmpty()) {
+                return DEFAULT_POOL_SIZE;
+            }
+            int size = Integer.parseInt(poolSize.trim());
+            if (size < 1) {
+                throw new IllegalArgumentException("HTTP.POOL.SIZE must be a positive integer");
+            }
+            return size;
+        } catch (IOException e) {
+            logger.warn("Unable to read HTTP.POOL.SIZE, using the default pool size of {}", DEFAULT_POOL_SIZE);
+            return DEFAULT_POOL_SIZE;
+        }
+    }
+
     private static CloseableHttpClient createHttpClient() {
         KeyStore keyStore;
         CloseableHttpClient httpClient = null;
@@ -78,18 +116,31 @@ public class HttpClientManager {
                     .build();
 
             PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager(registry);
-            connManager.setMaxTotal(10);
-            connManager.setDefaultMaxPerRoute(5);
+            // Pooled connections left idle for a while are checked before reuse, as the server may have closed them
+            connManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+            int poolSize = getPoolSize();
+            connManager.setMaxTotal(poolSize);
+            connManager.setDefaultMaxPerRoute(poolSize);
+            configureRouteLimits(configs, connManager, poolSize);
 
             RequestConfig requestConfig = RequestConfig.custom()
                     .setConnectTimeout(CONNECTION_TIMEOUT_MS)
                     .setSocketTimeout(SOCKET_TIMEOUT_MS)
                     .build();
 
+            long keepAliveMs = TimeUnit.SECONDS.toMillis(intProperty(configs, "HTTP.KEEPALIVE.SECONDS", 30));
+            int idleEvictSeconds = intProperty(configs, "HTTP.IDLE.EVICT.SECONDS", 30);
             httpClient = HttpClients.custom()
                     .setConnectionManager(connManager)
                     .setDefaultRequestConfig(requestConfig)
+                    .setKeepAliveStrategy(keepAliveStrategy(keepAliveMs))
+                    .evictExpiredConnections()
+                    .evictIdleConnections(idleEvictSeconds, TimeUnit.SECONDS)
+                    // Compressed responses are decoded by RestRequests, which counts the bytes on the wire
+                    .disableContentCompression()
                     .build();
+            connectionManager = connManager;
+            startPoolStatsLogger(intProperty(configs, "HTTP.POOL.STATS.INTERVAL.SECONDS", 60));
         } catch (KeyStoreException | IOException | CertificateException |
                 NoSuchAlgorithmException | KeyManagementException | UnrecoverableKeyException e) {
             logger.error("Exception caught while creating HttpClient: {}", e.getMessage(), e);
@@ -97,4 +148,96 @@ public class HttpClientManager {
         }
         return httpClient;
     }
-}
\ No newline at end of file
+
+    /**
+     * Limits the connections to the token endpoint and to the Publisher separately, so token requests always find a
+     * connection while the Publisher calls saturate the pool, and vice versa.
+     */
+    private static void configureRouteLimits(ReadConfigFile configs, PoolingHttpClientConnectionManager connManager,
+                                             int poolSize) {
+        publisherRoute = route(configs.getProperty("PUBLISHER.REST.URL"));
+        tokenRoute = route(configs.getProperty("RESIDENTKM.TOKEN.URL"));
+        int publisherLimit = Math.min(poolSize, intProperty(configs, "HTTP.ROUTE.PUBLISHER.MAX", poolSize));
+        int tokenLimit = Math.min(poolSize, intProperty(configs, "HTTP.ROUTE.TOKEN.MAX", Math.max(1, poolSize / 4)));
+        if (publisherRoute != null) {
+            connManager.setMaxPerRoute(publisherRoute, publisherLimit);
+        }
+        if (tokenRoute != null && !tokenRoute.equals(publisherRoute)) {
+            connManager.setMaxPerRoute(tokenRoute, tokenLimit);
+        } else if (tokenRoute != null) {
+            logger.info("The token endpoint and the Publisher share the route {}, using a limit of {} connections",
+                    tokenRoute.getTargetHost(), publisherLimit);
+        }
+    }
+
+    private static HttpRoute route(String url) {
+        if (url == null || url.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            HttpHost host = URIUtils.extractHost(URI.create(url.trim()));
+            if (host == null) {
+                return null;
+            }
+            boolean secure = "https".equalsIgnoreCase(host.getSchemeName());
+            // Routes are keyed by the resolved port, so the default port of the scheme is made explicit
+            int port = host.getPort() > 0 ? host.getPort() : secure ? 443 : 80;
+            return new HttpRoute(new HttpHost(host.getHostName(), port, host.getSchemeName()), null, secure);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unable to derive the connection route of {}: {}", url, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Keeps connections alive for the duration advertised by the server, but never longer than the configured
+     * maximum, so connections are not reused after a load balancer has silently dropped them.
+     */
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(long keepAliveMs) {
+        return (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMs) : keepAliveMs;
+        };
+    }
+
+    private static void startPoolStatsLogger(int intervalSeconds) {
+        if (intervalSeconds <= 0 || poolStatsLogger != null) {
+            return;
+        }
+        poolStatsLogger = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("http-pool-stats"));
+        poolStatsLogger.scheduleAtFixedRate(HttpClientManager::logPoolStats, intervalSeconds, intervalSeconds,
+                TimeUnit.SECONDS);
+    }
+
+    private static void logPoolStats() {
+        PoolStats total = connectionManager.getTotalStats();
+        if (total.getPending() > 0) {
+            // Requests waiting for a connection mean that the pool, not the server, limits the throughput
+            logger.warn("HTTP connection pool saturated | Leased: {} | Pending: {} | Available: {} | Max: {}",
+                    total.getLeased(), total.getPending(), total.getAvailable(), total.getMax());
+        } else {
+            logger.info("HTTP connection pool | Leased: {} | Pending: {} | Available: {} | Max: {}",
+                    total.getLeased(), total.getPending(), total.getAvailable(), total.getMax());
+        }
+        logRouteStats("Publisher", publisherRoute);
+        if (tokenRoute != null && !tokenRoute.equals(publisherRoute)) {
+            logRouteStats("Token", tokenRoute);
+        }
+    }
+
+    private static void logRouteStats(String name, HttpRoute route) {
+        if (route != null && logger.isDebugEnabled()) {
+            PoolStats stats = connectionManager.getStats(route);
+            logger.debug("{} route {} | Leased: {} | Pending: {} | Available: {} | Max: {}", name,
+                    route.getTargetHost(), stats.getLeased(), stats.getPending(), stats.getAvailable(), stats.getMax());
+        }
+    }
+
+    private static int intProperty(ReadConfigFile configs, String name, int defaultValue) {
+        String value = configs.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value.trim());
+    }
+}
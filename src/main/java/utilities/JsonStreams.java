@@ -0,0 +1,303 @@
+package utilities;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decodes Publisher responses straight from the response stream. The large list responses are read with a
+ * streaming parser that keeps only the fields the redeployment uses and skips everything else, so neither the
+ * response body nor the unused parts of the JSON tree are held in memory. Request payloads on the hot path are
+ * written directly instead of through format strings.
+ */
+final class JsonStreams {
+
+    private static final Set<String> API_FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "id", "name", "context", "tags", "lifeCycleStatus", "lastUpdatedTime", "updatedTime")));
+    private static final Set<String> PAGINATION_FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "offset", "limit", "total", "next")));
+
+    private JsonStreams() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    static Reader reader(HttpEntity entity) throws IOException {
+        Charset charset = ContentType.getOrDefault(entity).getCharset();
+        return new InputStreamReader(entity.getContent(), charset != null ? charset : StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a small response body into a json-simple tree without first copying it into a String.
+     */
+    static Object parse(HttpEntity entity) throws IOException, ParseException {
+        try (Reader reader = reader(entity)) {
+            return new JSONParser().parse(reader);
+        }
+    }
+
+    /**
+     * Reads a page of the API list, keeping the {@code count}, the {@code pagination} details and the fields of
+     * each API that are used by the redeployment.
+     */
+    static JSONObject readApiListPage(HttpEntity entity) throws IOException, ParseException {
+        try (JsonReader reader = new JsonReader(reader(entity))) {
+            JSONObject page = new JSONObject();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("list".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    page.put("list", readObjects(reader, API_FIELDS));
+                } else if ("pagination".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    page.put("pagination", readObject(reader, PAGINATION_FIELDS));
+                } else if ("count".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                    page.put("count", reader.nextLong());
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return page;
+        } catch (MalformedJsonException | IllegalStateException e) {
+            throw unexpectedStructure(e);
+        }
+    }
+
+    /**
+     * Reads the list of a revisions response, keeping the ID of each revision and the gateway environments it is
+     * deployed to.
+     */
+    static List<ApiRevision> readRevisionList(HttpEntity entity) throws IOException, ParseException {
+        try (JsonReader reader = new JsonReader(reader(entity))) {
+            List<ApiRevision> revisions = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("list".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    revisions = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        revisions.add(readRevision(reader));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return revisions;
+        } catch (MalformedJsonException | IllegalStateException e) {
+            throw unexpectedStructure(e);
+        }
+    }
+
+    private static ParseException unexpectedStructure(Exception e) {
+        // Reported like a json-simple parse error, so it isn't mistaken for a network failure and retried
+        return new ParseException(-1, ParseException.ERROR_UNEXPECTED_EXCEPTION, e.getMessage());
+    }
+
+    private static ApiRevision readRevision(JsonReader reader) throws IOException {
+        String id = null;
+        long createdTime = 0;
+        List<GatewayDeployment> deployments = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("deploymentInfo".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    deployments.add(readDeployment(reader));
+                }
+                reader.endArray();
+            } else if ("id".equals(name) && reader.peek() == JsonToken.STRING) {
+                id = reader.nextString();
+            } else if ("createdTime".equals(name)
+                    && (reader.peek() == JsonToken.NUMBER || reader.peek() == JsonToken.STRING)) {
+                createdTime = parseTime(reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new ApiRevision(id, deployments, createdTime);
+    }
+
+    private static long parseTime(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            try {
+                return Instant.parse(value).toEpochMilli();
+            } catch (DateTimeParseException ignored) {
+                // Revisions without a usable creation time keep the order in which they were listed
+                return 0;
+            }
+        }
+    }
+
+    private static GatewayDeployment readDeployment(JsonReader reader) throws IOException {
+        String name = null;
+        String vhost = null;
+        boolean displayOnDevportal = false;
+        // Publishers that don't report the gateway sync time or a workflow status have no pending deployments
+        boolean active = true;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            JsonToken token = reader.peek();
+            if ("name".equals(field) && token == JsonToken.STRING) {
+                name = reader.nextString();
+            } else if ("vhost".equals(field) && token == JsonToken.STRING) {
+                vhost = reader.nextString();
+            } else if ("displayOnDevportal".equals(field) && token == JsonToken.BOOLEAN) {
+                displayOnDevportal = reader.nextBoolean();
+            } else if ("displayOnDevportal".equals(field) && token == JsonToken.STRING) {
+                displayOnDevportal = Boolean.parseBoolean(reader.nextString());
+            } else if ("successDeployedTime".equals(field) && token == JsonToken.NULL) {
+                reader.nextNull();
+                active = false;
+            } else if ("status".equals(field) && token == JsonToken.STRING) {
+                String status = reader.nextString();
+                active &= !"CREATED".equals(status) && !"REJECTED".equals(status);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new GatewayDeployment(name, vhost, displayOnDevportal, active);
+    }
+
+    /**
+     * Writes the payload of a deploy-revision request for the given deployments.
+     */
+    static byte[] writeDeployPayload(String revisionId, List<GatewayDeployment> deployments) {
+        StringBuilder payload = new StringBuilder(32 + deployments.size() * 128);
+        payload.append('[');
+        for (int i = 0; i < deployments.size(); i++) {
+            GatewayDeployment deployment = deployments.get(i);
+            if (i > 0) {
+                payload.append(',');
+            }
+            payload.append("{\"revisionUuid\":");
+            appendString(payload, revisionId);
+            payload.append(",\"name\":");
+            appendString(payload, deployment.getName());
+            if (deployment.getVhost() != null) {
+                payload.append(",\"vhost\":");
+                appendString(payload, deployment.getVhost());
+            }
+            payload.append(",\"displayOnDevportal\":").append(deployment.isDisplayOnDevportal()).append('}');
+        }
+        payload.append(']');
+        return payload.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendString(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    private static JSONArray readObjects(JsonReader reader, Set<String> fields) throws IOException {
+        JSONArray objects = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            objects.add(readObject(reader, fields));
+        }
+        reader.endArray();
+        return objects;
+    }
+
+    private static JSONObject readObject(JsonReader reader, Set<String> fields) throws IOException {
+        JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (fields.contains(name)) {
+                object.put(name, readPrimitive(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return object;
+    }
+
+    private static Object readPrimitive(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+                return reader.nextString();
+            case NUMBER:
+                String number = reader.nextString();
+                return number.contains(".") || number.contains("e") || number.contains("E")
+                        ? (Object) Double.valueOf(number) : (Object) Long.valueOf(number);
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return null;
+            case BEGIN_ARRAY:
+                // Arrays of values such as the tags of an API
+                JSONArray values = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Object value = readPrimitive(reader);
+                    if (value != null) {
+                        values.add(value);
+                    }
+                }
+                reader.endArray();
+                return values;
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+}
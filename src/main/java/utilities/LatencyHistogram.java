@@ -0,0 +1,68 @@
+package utilities;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-memory latency histogram that can be updated concurrently without locks. Latencies are counted in
+ * fixed millisecond buckets, which are exported as cumulative Prometheus buckets and used to estimate
+ * percentiles.
+ */
+public class LatencyHistogram {
+
+    static final long[] BUCKET_BOUNDS_MS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+
+    // The last slot counts the latencies above the largest bound
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MS.length + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMs = new LongAdder();
+
+    public void record(long latencyMs) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MS.length && latencyMs > BUCKET_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        sumMs.add(latencyMs);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumMs() {
+        return sumMs.sum();
+    }
+
+    /**
+     * Returns the number of latencies up to and including the bound of the given bucket.
+     */
+    long getCumulativeCount(int bucket) {
+        long cumulative = 0;
+        for (int i = 0; i <= bucket; i++) {
+            cumulative += buckets.get(i);
+        }
+        return cumulative;
+    }
+
+    /**
+     * Estimates the given percentile as the upper bound of the bucket it falls in, or -1 if it falls above the
+     * largest bound.
+     */
+    public long getPercentileMs(double percentile) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+            cumulative += buckets.get(i);
+            if (cumulative >= rank) {
+                return BUCKET_BOUNDS_MS[i];
+            }
+        }
+        return -1;
+    }
+}
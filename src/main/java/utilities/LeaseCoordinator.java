@@ -0,0 +1,156 @@
+package utilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates the runner processes of a sharded run through lease files in a shared directory, so an idle runner can
+ * take over work units that no other runner has started. A unit is claimed by atomically creating its lease file,
+ * and marked done once it has been processed.
+ *
+ * <p>The lease files of the units being processed are touched periodically. A lease that hasn't been touched within
+ * the timeout belongs to a runner that died, and may be taken over by another runner.</p>
+ */
+public class LeaseCoordinator implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaseCoordinator.class);
+
+    private final Path directory;
+    private final String owner;
+    private final long timeoutMs;
+    private final Set<String> held = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService heartbeat;
+
+    /**
+     * Creates a coordinator for the given run. The runners of one run must use the same directory and run ID.
+     */
+    public LeaseCoordinator(String directory, String runId, String owner, long timeoutMs) throws IOException {
+        this.directory = Paths.get(directory, runId).toAbsolutePath();
+        this.owner = owner;
+        this.timeoutMs = timeoutMs;
+        Files.createDirectories(this.directory);
+        heartbeat = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("lease-heartbeat"));
+        long interval = Math.max(1000, timeoutMs / 3);
+        heartbeat.scheduleAtFixedRate(this::renewLeases, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Tries to claim a work unit. Returns false if the unit is done or is being processed by a live runner.
+     */
+    public boolean tryClaim(String unitId) {
+        Path lease = leaseFile(unitId);
+        try {
+            if (Files.exists(doneFile(unitId))) {
+                return false;
+            }
+            try {
+                Files.write(lease, owner.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE);
+            } catch (FileAlreadyExistsException e) {
+                if (!takeOverExpired(unitId, lease)) {
+                    return false;
+                }
+            }
+            held.add(unitId);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Unable to claim the work unit {}: {}", unitId, e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean takeOverExpired(String unitId, Path lease) throws IOException {
+        try {
+            long age = System.currentTimeMillis() - Files.getLastModifiedTime(lease).toMillis();
+            if (age < timeoutMs) {
+                return false;
+            }
+            // Only one runner can move the expired lease away, and that runner becomes the new owner
+            Path expired = lease.resolveSibling(lease.getFileName() + ".expired-" + owner);
+            Files.move(lease, expired, StandardCopyOption.ATOMIC_MOVE);
+            // Another runner may have replaced the expired lease between the check and the move, so the moved lease
+            // is checked again and handed back if it is still being renewed
+            if (System.currentTimeMillis() - Files.getLastModifiedTime(expired).toMillis() < timeoutMs) {
+                restoreLease(unitId, expired, lease);
+                return false;
+            }
+            Files.delete(expired);
+            Files.write(lease, owner.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE);
+            logger.warn("Took over the work unit {} from a runner that stopped renewing its lease", unitId);
+            return true;
+        } catch (NoSuchFileException | FileAlreadyExistsException | AtomicMoveNotSupportedException e) {
+            // Another runner completed or took over the unit first
+            return false;
+        }
+    }
+
+    private void restoreLease(String unitId, Path moved, Path lease) throws IOException {
+        try {
+            Files.move(moved, lease, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // A third runner claimed the unit in the meantime, its lease is kept and the moved one is discarded
+            logger.warn("Unable to restore the lease of the work unit {}, it was claimed again", unitId);
+            Files.deleteIfExists(moved);
+        }
+    }
+
+    /**
+     * Marks a claimed work unit as done, so no other runner takes it over.
+     */
+    public void complete(String unitId) {
+        try {
+            Files.write(doneFile(unitId), owner.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.warn("Unable to mark the work unit {} as done: {}", unitId, e.getMessage());
+        } finally {
+            held.remove(unitId);
+        }
+    }
+
+    private void renewLeases() {
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        for (String unitId : held) {
+            try {
+                Files.setLastModifiedTime(leaseFile(unitId), now);
+            } catch (IOException e) {
+                logger.warn("Unable to renew the lease of the work unit {}: {}", unitId, e.getMessage());
+            }
+        }
+    }
+
+    private Path leaseFile(String unitId) {
+        return directory.resolve(fileName(unitId) + ".lease");
+    }
+
+    private Path doneFile(String unitId) {
+        return directory.resolve(fileName(unitId) + ".done");
+    }
+
+    private static String fileName(String unitId) {
+        // Tenant domains are safe file names, the slice separators of split tenants are not
+        return unitId.replace('/', '-').replace('#', '_');
+    }
+
+    @Override
+    public void close() {
+        heartbeat.shutdown();
+    }
+}
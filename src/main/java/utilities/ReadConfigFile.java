@@ -12,6 +12,8 @@ import java.util.Properties;
 public class ReadConfigFile {
 
     private static final Logger logger = LoggerFactory.getLogger(ReadConfigFile.class);
+    // The configuration file can be moved away from the working directory with -Dredeployer.config=<path>
+    public static final String CONFIG_FILE_PROPERTY = "redeployer.config";
     private static ReadConfigFile instance;
     private Properties properties = new Properties();
 
@@ -23,7 +25,7 @@ public class ReadConfigFile {
     }
 
     private ReadConfigFile() throws IOException {
-        try (InputStream input = new FileInputStream("config.properties")) {
+        try (InputStream input = new FileInputStream(System.getProperty(CONFIG_FILE_PROPERTY, "config.properties"))) {
             properties.load(input);
         } catch (FileNotFoundException e) {
             logger.error("Can't find 'config.properties' file. Make sure the 'config.properties' is located with the running jar file.");
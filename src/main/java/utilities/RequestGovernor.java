@@ -0,0 +1,227 @@
+package utilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shared governor for the REST calls made to the Publisher and the Key Manager. The number of concurrent calls
+ * is adapted AIMD-style: it grows slowly while responses are fast and successful, and is halved when the server
+ * signals overload (429/502/503/504, timeouts) or when latency exceeds the configured target. A Retry-After
+ * header pauses all calls until the given time.
+ *
+ * <p>The governor also decides whether a failed call may be retried, computes the jittered backoff and enforces a
+ * retry budget shared by the whole run.</p>
+ */
+public class RequestGovernor {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestGovernor.class);
+
+    private static final long DECREASE_COOLDOWN_MS = 1000;
+
+    private static RequestGovernor instance;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitAvailable = lock.newCondition();
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final long latencyTargetMs;
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final int runRetryBudget;
+    private final AtomicInteger retryBudget;
+    private final AtomicBoolean retryBudgetExhausted = new AtomicBoolean();
+
+    private double concurrencyLimit;
+    private int inFlight;
+    private long lastDecrease;
+    private long pausedUntil;
+
+    RequestGovernor(int minConcurrency, int maxConcurrency, long latencyTargetMs, int maxAttempts, long baseDelayMs,
+                    long maxDelayMs, int retryBudget) {
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.latencyTargetMs = latencyTargetMs;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.runRetryBudget = retryBudget;
+        this.retryBudget = new AtomicInteger(retryBudget);
+        this.concurrencyLimit = maxConcurrency;
+    }
+
+    public static synchronized RequestGovernor getInstance() {
+        if (instance == null) {
+            instance = createGovernor();
+        }
+        return instance;
+    }
+
+    private static RequestGovernor createGovernor() {
+        int poolSize = HttpClientManager.getPoolSize();
+        try {
+            ReadConfigFile configs = ReadConfigFile.getInstance();
+            int minConcurrency = intProperty(configs, "GOVERNOR.MIN.CONCURRENCY", 1);
+            // More concurrent calls than pooled connections would only wait on the pool
+            int maxConcurrency = Math.min(intProperty(configs, "GOVERNOR.MAX.CONCURRENCY", poolSize), poolSize);
+            // A limit of 0 would block every call once the limit has been lowered to the minimum
+            if (minConcurrency < 1 || minConcurrency > maxConcurrency) {
+                throw new IllegalArgumentException("GOVERNOR.MIN.CONCURRENCY must be between 1 and " +
+                        maxConcurrency + ", the smaller of GOVERNOR.MAX.CONCURRENCY and HTTP.POOL.SIZE, but is " +
+                        minConcurrency);
+            }
+            return new RequestGovernor(
+                    minConcurrency,
+                    maxConcurrency,
+                    intProperty(configs, "GOVERNOR.LATENCY.TARGET.MS", 5000),
+                    intProperty(configs, "RETRY.MAX.ATTEMPTS", 4),
+                    intProperty(configs, "RETRY.BASE.DELAY.MS", 500),
+                    intProperty(configs, "RETRY.MAX.DELAY.MS", 15000),
+                    intProperty(configs, "RETRY.BUDGET", 1000));
+        } catch (IOException e) {
+            logger.warn("Unable to read the request governor configuration, using the defaults");
+            return new RequestGovernor(1, poolSize, 5000, 4, 500, 15000, 1000);
+        }
+    }
+
+    private static int intProperty(ReadConfigFile configs, String name, int defaultValue) {
+        String value = configs.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value.trim());
+    }
+
+    /**
+     * Restores the retry budget at the start of a run, so a run that exhausted it doesn't leave later runs of the
+     * same process without retries.
+     */
+    public void startRun() {
+        retryBudget.set(runRetryBudget);
+        retryBudgetExhausted.set(false);
+    }
+
+    /**
+     * Waits until the call may be sent. Every successful acquire must be followed by a {@link #release}.
+     */
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                long pause = pausedUntil - System.currentTimeMillis();
+                if (pause > 0) {
+                    permitAvailable.await(pause, TimeUnit.MILLISECONDS);
+                } else if (inFlight >= (int) concurrencyLimit) {
+                    permitAvailable.await();
+                } else {
+                    inFlight++;
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            permitAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a completed call. Fast calls raise the concurrency limit by roughly one per window of calls, and
+     * calls slower than the latency target lower it.
+     */
+    public void onSuccess(long latencyMs) {
+        lock.lock();
+        try {
+            if (latencyMs > latencyTargetMs) {
+                decrease(0.9, "latency of " + latencyMs + " ms");
+            } else if (concurrencyLimit < maxConcurrency) {
+                concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1.0 / concurrencyLimit);
+                permitAvailable.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a call rejected because the server is overloaded, optionally pausing all calls until the time given
+     * by a Retry-After header.
+     */
+    public void onOverload(String reason, long retryAfterMs) {
+        lock.lock();
+        try {
+            decrease(0.5, reason);
+            if (retryAfterMs > 0) {
+                pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + Math.min(retryAfterMs, maxDelayMs));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrease(double factor, String reason) {
+        long now = System.currentTimeMillis();
+        // A burst of failures from the same overload should only back off once
+        if (now - lastDecrease < DECREASE_COOLDOWN_MS) {
+            return;
+        }
+        lastDecrease = now;
+        double previous = concurrencyLimit;
+        concurrencyLimit = Math.max(minConcurrency, concurrencyLimit * factor);
+        if ((int) previous != (int) concurrencyLimit) {
+            logger.warn("Reducing concurrent REST calls from {} to {} due to {}", (int) previous,
+                    (int) concurrencyLimit, reason);
+        }
+    }
+
+    /**
+     * Returns whether another attempt may be made after the given number of attempts, consuming one unit of the
+     * run's retry budget if so.
+     */
+    public boolean tryRetry(int attempts) {
+        if (attempts >= maxAttempts) {
+            return false;
+        }
+        if (retryBudget.getAndUpdate(budget -> Math.max(0, budget - 1)) == 0) {
+            // Logged once, as every failed call ends up here while the Publisher is struggling
+            if (retryBudgetExhausted.compareAndSet(false, true)) {
+                logger.warn("The retry budget of this run has been exhausted, failed REST calls are no longer retried");
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the backoff before the given retry, using exponential backoff with full jitter.
+     */
+    public void backoff(int attempt) throws InterruptedException {
+        long ceiling = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt, 20));
+        Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+
+    public int getConcurrencyLimit() {
+        lock.lock();
+        try {
+            return (int) concurrencyLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,14 +1,19 @@
 package utilities;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpStatus;
 import org.apache.http.HttpHeaders;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
@@ -17,32 +22,282 @@ import org.apache.http.protocol.HTTP;
 import org.apache.http.util.EntityUtils;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.ConnectException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Calls to the token endpoint and the Publisher REST API. A call that fails is logged and returns null, or false for
+ * the calls that return whether they succeeded.
+ *
+ * <p>A call made with an access token that the Publisher rejects with HTTP 401 doesn't return null but throws an
+ * {@link UnauthorizedException}, so the caller can obtain a new token and retry, as {@link TokenManager#call} does.
+ * The futures of the asynchronous variants complete exceptionally with a {@link CompletionException} caused by the
+ * {@code UnauthorizedException}. {@link #getToken} authenticates with the client credentials instead, and returns
+ * null when they are rejected.</p>
+ */
 public class RestRequests {
 
     private static final Logger logger = LoggerFactory.getLogger(RestRequests.class);
     private static final String AUTH_BASIC = "Basic ";
     private static final String AUTH_BEARER = "Bearer ";
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    private static final int DEFAULT_RESPONSE_LOG_CHARS = 512;
+    private static final int RESPONSE_LOG_CHARS = loadResponseLogChars();
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final boolean COMPRESSION = loadCompression();
 
     private RestRequests() {
         throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
     }
 
+    /**
+     * Executor for the asynchronous variants of the REST calls. It is sized to the HTTP connection pool, so the
+     * number of threads is bounded by the number of connections rather than by the number of pending calls.
+     */
+    private static class AsyncExecutorHolder {
+        private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(HttpClientManager.getPoolSize(),
+                new NamedThreadFactory("rest-io"));
+    }
+
+    private static int loadResponseLogChars() {
+        try {
+            String value = ReadConfigFile.getInstance().getProperty("LOG.RESPONSE.MAX.CHARS");
+            return value == null || value.trim().isEmpty() ? DEFAULT_RESPONSE_LOG_CHARS
+                    : Math.max(0, Integer.parseInt(value.trim()));
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Unable to read LOG.RESPONSE.MAX.CHARS, logging up to {} characters of error responses",
+                    DEFAULT_RESPONSE_LOG_CHARS);
+            return DEFAULT_RESPONSE_LOG_CHARS;
+        }
+    }
+
+    private static boolean loadCompression() {
+        try {
+            String value = ReadConfigFile.getInstance().getProperty("HTTP.COMPRESSION");
+            return value == null || value.trim().isEmpty() || Boolean.parseBoolean(value.trim());
+        } catch (IOException e) {
+            logger.warn("Unable to read HTTP.COMPRESSION, requesting compressed responses");
+            return true;
+        }
+    }
+
+    private static <T> CompletableFuture<T> async(Callable<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, AsyncExecutorHolder.EXECUTOR);
+    }
+
+    public static CompletableFuture<JSONObject> getTokenAsync(String url, String clientId, String clientSecret) {
+        return async(() -> getToken(url, clientId, clientSecret));
+    }
+
+    public static CompletableFuture<ArrayList<JSONObject>> getAPIListAsync(String url, String accessToken, String limit,
+                                                                         String offset, String sortBy, String orderBy) {
+        return async(() -> getAPIList(url, accessToken, limit, offset, sortBy, orderBy));
+    }
+
+    public static CompletableFuture<JSONObject> getAPIListPageAsync(String url, String accessToken, String limit,
+                                                                  String offset, String sortBy, String orderBy) {
+        return async(() -> getAPIListPage(url, accessToken, limit, offset, sortBy, orderBy));
+    }
+
+    public static CompletableFuture<JSONObject> getAPIListPageAsync(String url, String accessToken, String limit,
+                                                                  String offset, String sortBy, String orderBy,
+                                                                  String query) {
+        return async(() -> getAPIListPage(url, accessToken, limit, offset, sortBy, orderBy, query));
+    }
+
+    public static CompletableFuture<List<ApiRevision>> getRevisionDetailsAsync(String url, String accessToken,
+                                                                             String apiId) {
+        return async(() -> getRevisionDetails(url, accessToken, apiId));
+    }
+
+    public static CompletableFuture<JSONObject> createRevisionAsync(String url, String accessToken, String apiId,
+                                                                  String description) {
+        return async(() -> createRevision(url, accessToken, apiId, description));
+    }
+
+    public static CompletableFuture<ArrayList<JSONObject>> deployRevisionAsync(String url, String accessToken, String apiId,
+                                                                             List<GatewayDeployment> deployments,
+                                                                             String newRevisionId) {
+        return async(() -> deployRevision(url, accessToken, apiId, deployments, newRevisionId));
+    }
+
+    public static CompletableFuture<JSONArray> undeployRevisionsAsync(String url, JSONArray jsonArray, String accessToken,
+                                                                    String apiId, String revisionId) {
+        return async(() -> undeployRevisions(url, jsonArray, accessToken, apiId, revisionId));
+    }
+
+    public static CompletableFuture<JSONArray> undeployRevisionsAsync(String url, UndeploySpec undeploySpec,
+                                                                    String accessToken, String apiId, String revisionId) {
+        return async(() -> undeployRevisions(url, undeploySpec, accessToken, apiId, revisionId));
+    }
+
+    /**
+     * Reads the entity of a successful response.
+     */
+    private interface EntityHandler<T> {
+        T handle(HttpEntity entity) throws IOException, ParseException;
+    }
+
+    private static <T> EntityHandler<T> jsonHandler() {
+        return entity -> (T) JsonStreams.parse(entity);
+    }
+
+    /**
+     * Sends a request through the {@link RequestGovernor} and hands the entity of a response with the expected
+     * status to the handler. The response is always closed, so the connection is returned to the pool.
+     *
+     * <p>GET requests ask for a gzip or deflate compressed response, which is decoded while the handler reads it.
+     * The bytes received and decoded are recorded per operation in the {@link RunMetrics}.</p>
+     *
+     * <p>Calls rejected because the Publisher is overloaded (429/502/503/504) or that failed with an I/O error are
+     * retried with jittered backoff. Calls that are not idempotent are only retried when the request can't have
+     * been processed: on HTTP 429 or when the connection could not be established.</p>
+     *
+     * @return the handled entity, or null if the call failed
+     * @throws UnauthorizedException if a bearer token was rejected with HTTP 401
+     */
+    private static <T> T execute(String operation, HttpRequestBase request, int expectedStatus, boolean idempotent,
+                                 EntityHandler<T> handler) throws IOException, ParseException {
+        CloseableHttpClient httpClient = HttpClientManager.getInstance();
+        RequestGovernor governor = RequestGovernor.getInstance();
+        String url = request.getURI().toString();
+        if (COMPRESSION && request instanceof HttpGet) {
+            request.setHeader(HttpHeaders.ACCEPT_ENCODING, ACCEPT_ENCODING);
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                governor.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to send " + operation + " REST request");
+            }
+            long start = System.currentTimeMillis();
+            String failure;
+            IOException ioFailure = null;
+            try (CloseableHttpResponse response = httpClient.execute(request)) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                DecodingEntity entity = response.getEntity() != null ? new DecodingEntity(response.getEntity()) : null;
+                if (entity != null && statusCode == expectedStatus) {
+                    T result = handler.handle(entity);
+                    EntityUtils.consume(entity);
+                    long latency = System.currentTimeMillis() - start;
+                    RunMetrics.recordCall(operation, statusCode, latency);
+                    RunMetrics.recordTransfer(operation, entity.getWireBytes(), entity.getDecodedBytes(),
+                            entity.isCompressed());
+                    governor.onSuccess(latency);
+                    return result;
+                }
+                RunMetrics.recordCall(operation, statusCode, System.currentTimeMillis() - start);
+                if (statusCode == HttpStatus.SC_UNAUTHORIZED && request.containsHeader(HttpHeaders.AUTHORIZATION)
+                        && request.getFirstHeader(HttpHeaders.AUTHORIZATION).getValue().startsWith(AUTH_BEARER)) {
+                    // The body is skipped rather than left unread, so the connection can be reused
+                    EntityUtils.consume(entity);
+                    throw new UnauthorizedException("Access token was rejected in " + operation + " REST request: " + url);
+                }
+                if (!isOverloaded(statusCode) || !idempotent && statusCode != SC_TOO_MANY_REQUESTS) {
+                    if (isOverloaded(statusCode)) {
+                        governor.onOverload(operation + " returned HTTP " + statusCode, retryAfterMillis(response));
+                    }
+                    logger.error("Error in {} REST request: {} | Response: {}", operation, url,
+                            responseExcerpt(entity));
+                    return null;
+                }
+                EntityUtils.consume(entity);
+                failure = "HTTP " + statusCode;
+                governor.onOverload(operation + " returned " + failure, retryAfterMillis(response));
+            } catch (IOException e) {
+                RunMetrics.recordCall(operation, 0, System.currentTimeMillis() - start);
+                governor.onOverload(operation + " failed with " + e.getClass().getSimpleName(), 0);
+                if (!idempotent && !(e instanceof ConnectException || e instanceof ConnectTimeoutException)) {
+                    throw e;
+                }
+                failure = e.toString();
+                ioFailure = e;
+            } finally {
+                governor.release();
+            }
+
+            if (!governor.tryRetry(attempt)) {
+                if (ioFailure != null) {
+                    throw ioFailure;
+                }
+                logger.error("Error in {} REST request: {} | Giving up after {} attempts: {}", operation, url, attempt,
+                        failure);
+                return null;
+            }
+            logger.warn("{} REST request {} failed with {}, retrying (attempt {})", operation, url, failure, attempt + 1);
+            try {
+                governor.backoff(attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while retrying " + operation + " REST request");
+            }
+        }
+    }
+
+    /**
+     * Reads the start of an error response for the log. The error pages of proxies in front of the Publisher can be
+     * large, and only their start is useful, so the rest is skipped without being decoded.
+     */
+    private static String responseExcerpt(HttpEntity entity) throws IOException {
+        if (entity == null || RESPONSE_LOG_CHARS == 0) {
+            return "";
+        }
+        char[] buffer = new char[RESPONSE_LOG_CHARS];
+        int length = 0;
+        try (Reader reader = JsonStreams.reader(entity)) {
+            int read;
+            while (length < buffer.length && (read = reader.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+            }
+            boolean truncated = length == buffer.length && reader.read() != -1;
+            return new String(buffer, 0, length) + (truncated ? "... (truncated)" : "");
+        }
+    }
+
+    private static boolean isOverloaded(int statusCode) {
+        return statusCode == SC_TOO_MANY_REQUESTS || statusCode == HttpStatus.SC_BAD_GATEWAY
+                || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE || statusCode == HttpStatus.SC_GATEWAY_TIMEOUT;
+    }
+
+    private static long retryAfterMillis(CloseableHttpResponse response) {
+        Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(retryAfter.getValue().trim()) * 1000;
+        } catch (NumberFormatException e) {
+            // HTTP-date values are not used by the Publisher, so the regular backoff is used instead
+            return 0;
+        }
+    }
+
     public static JSONObject getToken(String url, String clientId, String clientSecret) {
 
         JSONObject tokenDetails = null;
-        CloseableHttpClient httpClient = HttpClientManager.getInstance();
         String credentials = Base64.getEncoder().encodeToString((clientId + ":" + clientSecret).getBytes());
 
         try{
@@ -54,71 +309,81 @@ public class RestRequests {
                     " apim:api_import_export apim:api_list_view apim:api_create apim:api_publish"));
 
             httpPost.setEntity(new UrlEncodedFormEntity(namevaluePairs, HTTP.UTF_8));
-            CloseableHttpResponse response = httpClient.execute(httpPost);
-            HttpEntity entity = response.getEntity();
-            String responseString = EntityUtils.toString(entity);
-            if (entity != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-                JSONParser parser = new JSONParser();
-                tokenDetails = (JSONObject) parser.parse(responseString);
-            } else {
-                logger.error("Error in getToken REST request: {} | Response: {}", url, responseString);
-            }
-            EntityUtils.consume(entity);
+            tokenDetails = execute("getToken", httpPost, HttpStatus.SC_OK, true, jsonHandler());
         } catch (IOException | ParseException e) {
             logger.error("Exception in getToken: {}", e.getMessage(), e);
         }
         return tokenDetails;
     }
 
+    /**
+     * Retrieves a single page of the API list.
+     *
+     * @throws UnauthorizedException if the access token was rejected with HTTP 401
+     */
     public static ArrayList<JSONObject> getAPIList(String url, String accessToken, String limit,
                                                    String offset, String sortBy, String orderBy)
     {
         ArrayList<JSONObject> apiDetailsList = null;
-        CloseableHttpClient httpClient = HttpClientManager.getInstance();
+        JSONObject responseJson = getAPIListPage(url, accessToken, limit, offset, sortBy, orderBy);
+        if (responseJson != null && responseJson.get("list") instanceof ArrayList) {
+            apiDetailsList = (ArrayList<JSONObject>) responseJson.get("list");
+        }
+        return apiDetailsList;
+    }
+
+    /**
+     * Retrieves a single page of the API list, including the {@code count} and {@code pagination} details needed
+     * to request the following page.
+     *
+     * @throws UnauthorizedException if the access token was rejected with HTTP 401
+     */
+    public static JSONObject getAPIListPage(String url, String accessToken, String limit,
+                                            String offset, String sortBy, String orderBy)
+    {
+        return getAPIListPage(url, accessToken, limit, offset, sortBy, orderBy, null);
+    }
+
+    /**
+     * Retrieves a single page of the APIs matching the given Publisher search query, e.g. {@code tag:finance}. A
+     * null query lists all APIs.
+     *
+     * @throws UnauthorizedException if the access token was rejected with HTTP 401
+     */
+    public static JSONObject getAPIListPage(String url, String accessToken, String limit,
+                                            String offset, String sortBy, String orderBy, String query)
+    {
+        JSONObject responseJson = null;
         url = url + "?limit="+limit+"&offset="+offset+"&sortBy="+sortBy+"&sortOrder="+orderBy;
+        if (query != null) {
+            url = url + "&query=" + URLEncoder.encode(query, StandardCharsets.UTF_8);
+        }
 
         try {
             HttpGet httpget = new HttpGet(url);
             httpget.addHeader(HttpHeaders.AUTHORIZATION, AUTH_BEARER + accessToken);
-            CloseableHttpResponse response = httpClient.execute(httpget);
-            HttpEntity entity = response.getEntity();
-            String responseString = EntityUtils.toString(entity);
-            if (entity != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-                JSONParser parser = new JSONParser();
-                JSONObject responseJson = (JSONObject) parser.parse(responseString);
-                if (responseJson.get("list") instanceof ArrayList) {
-                    apiDetailsList = (ArrayList<JSONObject>) responseJson.get("list");
-                }
-            } else {
-                logger.error("Error in getAPIList REST request: {} | Response: {}", url, responseString);
-            }
-            EntityUtils.consume(entity);
+            responseJson = execute("getAPIList", httpget, HttpStatus.SC_OK, true, JsonStreams::readApiListPage);
         } catch (IOException | ParseException e) {
             logger.error("Exception in getAPIList: {}", e.getMessage(), e);
         }
-        return apiDetailsList;
+        return responseJson;
     }
 
 
+    /**
+     * Retrieves the details of an API.
+     *
+     * @throws UnauthorizedException if the access token was rejected with HTTP 401
+     */
     public static JSONObject getApiDetails(String url, String accessToken, String apiId) {
 
         JSONObject apiDetails = null;
-        CloseableHttpClient httpClient = HttpClientManager.getInstance();
         url = url + "/" + apiId;
 
         try {
             HttpGet httpget = new HttpGet(url);
             httpget.addHeader(HttpHeaders.AUTHORIZATION, AUTH_BEARER + accessToken);
-            CloseableHttpResponse response = httpClient.execute(httpget);
-            HttpEntity entity = response.getEntity();
-            String responseString = EntityUtils.toString(entity);
-            if (entity != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-                JSONParser parser = new JSONParser();
-                apiDetails = (JSONObject) parser.parse(responseString);
-            } else {
-                logger.error("Error in getApiDetails REST request: {} | Response: {}", url, responseString);
-            }
-            EntityUtils.consume(entity);
+            apiDetails = execute("getApiDetails", httpget, HttpStatus.SC_OK, true, jsonHandler());
         } catch (IOException | ParseException e) {
             logger.error("Exception in getApiDetails: {}", e.getMessage(), e);
         }
@@ -126,10 +391,14 @@ public class RestRequests {
     }
 
 
+    /**
+     * Updates an API, returning whether the update succeeded.
+     *
+     * @throws UnauthorizedException if the access token was rejected with HTTP 401
+     */
     public static Boolean updateApi(String url, String accessToken, String apiId, String apiData) {
 
         Boolean successState = false;
-        CloseableHttpClient httpClient = HttpClientManager.getInstance();
         url = url + "/" + apiId;
 
         try {
@@ -137,52 +406,73 @@ public class RestRequests {
             httpPut.addHeader(HttpHeaders.AUTHORIZATION, AUTH_BEARER + accessToken);
             HttpEntity stringEntity = new StringEntity(apiData, ContentType.APPLICATION_JSON);
             httpPut.setEntity(stringEntity);
-            CloseableHttpResponse response = httpClient.execute(httpPut);
-            HttpEntity entity = response.getEntity();
-            String responseString = EntityUtils.toString(entity);
-            if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-                successState = true;
-            } else {
-                logger.error("Error in updateApi REST request: {} | Response: {}", url, responseString);
-            }
-        } catch (IOException e) {
+            successState = execute("updateApi", httpPut, HttpStatus.SC_OK, true, entity -> Boolean.TRUE) != null;
+        } catch (IOException | ParseException e) {
             logger.error("Exception in updateApi: {}", e.getMessage(), e);
         }
         return successState;
     }
 
-    public static ArrayList<JSONObject> getRevisionDetails(String url, String accessToken, String apiId){
+    /**
+     * Retrieves the deployed revisions of an API.
+     *
+     * @throws UnauthorizedException if the access token was rejected with HTTP 401
+     */
+    public static List<ApiRevision> getRevisionDetails(String url, String accessToken, String apiId){
+        return getRevisionDetails(url, accessToken, apiId, true);
+    }
 
-        ArrayList<JSONObject> revisionDetails = null;
-        CloseableHttpClient httpClient = HttpClientManager.getInstance();
-        url = url + "/" + apiId + "/revisions?query=deployed:true";
+    /**
+     * Retrieves the revisions of an API, either only the deployed ones or all of them, including the revisions
+     * that are no longer deployed anywhere.
+     *
+     * @throws UnauthorizedException if the access token was rejected with HTTP 401
+     */
+    public static List<ApiRevision> getRevisionDetails(String url, String accessToken, String apiId,
+                                                       boolean deployedOnly){
+
+        List<ApiRevision> revisionDetails = null;
+        url = url + "/" + apiId + "/revisions" + (deployedOnly ? "?query=deployed:true" : "");
 
         try {
             HttpGet httpget = new HttpGet(url);
             httpget.addHeader(HttpHeaders.AUTHORIZATION, AUTH_BEARER + accessToken);
-            CloseableHttpResponse response = httpClient.execute(httpget);
-            HttpEntity entity = response.getEntity();
-            String responseString = EntityUtils.toString(entity);
-            if (entity != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-                JSONParser parser = new JSONParser();
-                JSONObject responseJson = (JSONObject) parser.parse(responseString);
-                if (responseJson.get("list") instanceof ArrayList) {
-                    revisionDetails = (ArrayList<JSONObject>) responseJson.get("list");
-                }
-            } else {
-                logger.error("Error in getRevisionDetails REST request: {} | Response: {}", url, responseString);
-            }
-            EntityUtils.consume(entity);
+            revisionDetails = execute("getRevisionDetails", httpget, HttpStatus.SC_OK, true,
+                    JsonStreams::readRevisionList);
         } catch (IOException | ParseException e) {
             logger.error("Exception in getRevisionDetails: {}", e.getMessage(), e);
         }
         return revisionDetails;
     }
 
+    /**
+     * Deletes a revision of an API, returning whether the revision was deleted.
+     *
+     * @throws UnauthorizedException if the access token was rejected with HTTP 401
+     */
+    public static boolean deleteRevision(String url, String accessToken, String apiId, String revisionId) {
+
+        boolean successState = false;
+        url = url + "/" + apiId + "/revisions/" + revisionId;
+
+        try {
+            HttpDelete httpDelete = new HttpDelete(url);
+            httpDelete.addHeader(HttpHeaders.AUTHORIZATION, AUTH_BEARER + accessToken);
+            successState = execute("deleteRevision", httpDelete, HttpStatus.SC_OK, true, entity -> Boolean.TRUE) != null;
+        } catch (IOException | ParseException e) {
+            logger.error("Exception in deleteRevision: {}", e.getMessage(), e);
+        }
+        return successState;
+    }
+
+    /**
+     * Creates a new revision of an API.
+     *
+     * @throws UnauthorizedException if the access token was rejected with HTTP 401
+     */
     public static JSONObject createRevision(String url,  String accessToken, String apiId, String description){
 
         JSONObject createRevisionResponse = null;
-        CloseableHttpClient httpClient = HttpClientManager.getInstance();
         url = url + "/" + apiId + "/revisions";
 
         try {
@@ -195,103 +485,68 @@ public class RestRequests {
             requestJson.put("description", description);
             StringEntity requestEntity = new StringEntity(requestJson.toJSONString());
             httpPost.setEntity(requestEntity);
-            CloseableHttpResponse response = httpClient.execute(httpPost);
-            HttpEntity entity = response.getEntity();
-            String responseString = EntityUtils.toString(entity);
-            if (entity != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_CREATED) {
-                JSONParser parser = new JSONParser();
-                createRevisionResponse = (JSONObject) parser.parse(responseString);
-            } else {
-                logger.error("Error in createRevision REST request: {} | Response: {}", url, responseString);
-            }
-            EntityUtils.consume(entity);
+            // Creating a revision is not idempotent, so it is only retried when the request was not processed
+            createRevisionResponse = execute("createRevision", httpPost, HttpStatus.SC_CREATED, false, jsonHandler());
         } catch (IOException | ParseException e) {
             logger.error("Exception in createRevision: {}", e.getMessage(), e);
         }
         return createRevisionResponse;
     }
 
+    /**
+     * Deploys a revision of an API to the given gateway environments.
+     *
+     * @throws UnauthorizedException if the access token was rejected with HTTP 401
+     */
     public static ArrayList<JSONObject> deployRevision(String url, String accessToken, String apiId,
-                                         List<Map<String, String>> deploymentMap, String newRevisionId) {
+                                         List<GatewayDeployment> deployments, String newRevisionId) {
 
         ArrayList<JSONObject> deployRevisionResponse = null;
-        CloseableHttpClient httpClient = HttpClientManager.getInstance();
         url = url + "/" + apiId + "/deploy-revision?revisionId=" + newRevisionId;
-        String payloadJson = "[\n%s\n]";
-
-        String jsonArray = deploymentMap.stream()
-                .map(deployment -> String.format(
-                        "    {\n" +
-                                "      \"revisionUuid\": \"%s\",\n" +
-                                "      \"name\": \"%s\",\n" +
-                                "      \"vhost\": \"%s\",\n" +
-                                "      \"displayOnDevportal\": %s\n" +
-                                "    }",
-                        newRevisionId,
-                        deployment.get("name"),
-                        deployment.get("vhost"),
-                        deployment.get("displayOnDevportal")
-                ))
-                .collect(Collectors.joining(",\n"));
-
-        String jsonPayload = String.format(payloadJson, jsonArray);
 
         try {
             HttpPost httpPost = new HttpPost(url);
             httpPost.addHeader(HttpHeaders.AUTHORIZATION, AUTH_BEARER + accessToken);
-            HttpEntity stringEntity = new StringEntity(jsonPayload, ContentType.APPLICATION_JSON);
-            httpPost.setEntity(stringEntity);
-            CloseableHttpResponse response = httpClient.execute(httpPost);
-            HttpEntity entity = response.getEntity();
-            String responseString = EntityUtils.toString(entity);
-            if (entity != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_CREATED) {
-                JSONParser parser = new JSONParser();
-                deployRevisionResponse = (ArrayList<JSONObject>) parser.parse(responseString);
-            } else {
-                logger.error("Error in deployRevision REST request: {} | Response: {}", url, responseString);
-            }
-            EntityUtils.consume(entity);
+            httpPost.setEntity(new ByteArrayEntity(JsonStreams.writeDeployPayload(newRevisionId, deployments),
+                    ContentType.APPLICATION_JSON));
+            // Deploying the same revision to the same environments again has no further effect
+            deployRevisionResponse = execute("deployRevision", httpPost, HttpStatus.SC_CREATED, true, jsonHandler());
         } catch (IOException | ParseException e) {
             logger.error("Exception in deployRevision: {}", e.getMessage(), e);
         }
         return deployRevisionResponse;
     }
 
+    /**
+     * Undeploys the gateway environments of the given JSON array from a revision.
+     *
+     * @throws UnauthorizedException if the access token was rejected with HTTP 401
+     */
     public static JSONArray undeployRevisions(String url, JSONArray jsonArray, String accessToken, String apiId,
                                               String revisionId) throws IOException, ParseException {
+        return undeployRevisions(url, jsonArray.toString().getBytes(StandardCharsets.UTF_8), accessToken, apiId,
+                revisionId);
+    }
 
-        JSONArray undeploy = null;
-        CloseableHttpClient httpClient = HttpClientManager.getInstance();
+    /**
+     * Undeploys the gateway environments of the given specification from a revision, reusing the request body that
+     * was encoded when the specification was loaded.
+     *
+     * @throws UnauthorizedException if the access token was rejected with HTTP 401
+     */
+    public static JSONArray undeployRevisions(String url, UndeploySpec undeploySpec, String accessToken, String apiId,
+                                              String revisionId) throws IOException, ParseException {
+        return undeployRevisions(url, undeploySpec.getRequestBody(), accessToken, apiId, revisionId);
+    }
+
+    private static JSONArray undeployRevisions(String url, byte[] requestBody, String accessToken, String apiId,
+                                               String revisionId) throws IOException, ParseException {
 
         HttpPost httpPost = new HttpPost(url+"/"+apiId+"/undeploy-revision?revisionId="+revisionId);
         httpPost.addHeader(HttpHeaders.AUTHORIZATION, AUTH_BEARER + accessToken);
-        HttpEntity stringEntity = new StringEntity(jsonArray.toString(), ContentType.APPLICATION_JSON);
-        httpPost.setEntity(stringEntity);
-
-        CloseableHttpResponse response = httpClient.execute(httpPost);
-        HttpEntity entity = response.getEntity();
-
-        String responseString = EntityUtils.toString(entity);
-        if (entity != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_CREATED) {
-            JSONParser parser = new JSONParser();
-            undeploy = (JSONArray) parser.parse(responseString);
-        } else {
-            logger.error("Error in deployRevision REST request: {} | Response: {}", url, responseString);
-        }
-        return undeploy;
-
-//        CloseableHttpResponse response = httpClient.execute(request);
-//
-//        HttpEntity entity = response.getEntity();
-//        String responseString = EntityUtils.toString(entity);
-//        if (entity != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_CREATED) {
-//            JSONParser parser = new JSONParser();
-//            undeploy = (JSONArray) parser.parse(responseString);
-//        } else {
-//            logger.error("Error in deployRevision REST request: {} | Response: {}", url, responseString);
-//        }
-//        return undeploy;
+        httpPost.setEntity(new ByteArrayEntity(requestBody, ContentType.APPLICATION_JSON));
 
+        return execute("undeployRevisions", httpPost, HttpStatus.SC_CREATED, true, jsonHandler());
     }
 
 
@@ -0,0 +1,299 @@
+package utilities;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a redeployment run: a latency histogram for every REST operation and status code, the response bytes
+ * received and decoded by every operation, the progress counters of every tenant and a sampled throughput and ETA.
+ * The metrics are periodically written to a file in the Prometheus text format, and a JSON summary is written when
+ * the run finishes.
+ */
+public final class RunMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(RunMetrics.class);
+
+    // Weight of the latest sample in the smoothed throughput
+    private static final double THROUGHPUT_SMOOTHING = 0.3;
+
+    private static final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, TenantProgress> tenants = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, TransferCounter> transfers = new ConcurrentHashMap<>();
+
+    private static ScheduledExecutorService sampler;
+    private static String prometheusFile;
+    private static String summaryFile;
+    private static long startTime = System.currentTimeMillis();
+    private static long lastSampleTime;
+    private static long lastCompleted;
+    private static volatile double throughput;
+
+    private RunMetrics() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * Starts sampling the throughput and writing the Prometheus file at the given interval. Either file may be
+     * null to disable it.
+     */
+    public static synchronized void start(String prometheusFilePath, String summaryFilePath, int intervalSeconds) {
+        prometheusFile = prometheusFilePath;
+        summaryFile = summaryFilePath;
+        startTime = System.currentTimeMillis();
+        lastSampleTime = startTime;
+        lastCompleted = 0;
+        throughput = 0;
+        latencies.clear();
+        tenants.clear();
+        transfers.clear();
+        sampler = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("metrics-sampler"));
+        sampler.scheduleAtFixedRate(RunMetrics::sample, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops sampling and writes the final Prometheus file and the JSON summary.
+     */
+    public static synchronized void stop() {
+        if (sampler != null) {
+            sampler.shutdown();
+            sampler = null;
+        }
+        writePrometheusFile();
+        writeSummaryFile();
+    }
+
+    /**
+     * Records the latency of a REST call. A status code of 0 denotes a call that failed without a response.
+     */
+    public static void recordCall(String operation, int statusCode, long latencyMs) {
+        String status = statusCode > 0 ? String.valueOf(statusCode) : "io_error";
+        latencies.computeIfAbsent(operation + "|" + status, key -> new LatencyHistogram()).record(latencyMs);
+    }
+
+    /**
+     * Records the size of a response body as received on the wire and once decoded, which differ when the
+     * response is compressed.
+     */
+    public static void recordTransfer(String operation, long wireBytes, long decodedBytes, boolean compressed) {
+        transfers.computeIfAbsent(operation, key -> new TransferCounter()).record(wireBytes, decodedBytes, compressed);
+    }
+
+    public static void registerTenant(TenantProgress progress) {
+        tenants.put(progress.getWorkUnit(), progress);
+    }
+
+    private static long completedApis() {
+        long completed = 0;
+        for (TenantProgress progress : tenants.values()) {
+            completed += progress.getRedeployedApis() + progress.getFailedApis() + progress.getSkippedApis();
+        }
+        return completed;
+    }
+
+    private static long expectedApis() {
+        long expected = 0;
+        for (TenantProgress progress : tenants.values()) {
+            expected += Math.max(0, progress.getExpectedApis());
+        }
+        return expected;
+    }
+
+    private static synchronized void sample() {
+        try {
+            long now = System.currentTimeMillis();
+            long completed = completedApis();
+            double current = (completed - lastCompleted) * 1000.0 / Math.max(1, now - lastSampleTime);
+            throughput = lastSampleTime == startTime ? current
+                    : THROUGHPUT_SMOOTHING * current + (1 - THROUGHPUT_SMOOTHING) * throughput;
+            lastSampleTime = now;
+            lastCompleted = completed;
+
+            long expected = expectedApis();
+            logger.info("Progress: {} of {} APIs completed | {} APIs/s | ETA: {} s", completed, expected,
+                    String.format("%.2f", throughput), etaSeconds(completed, expected));
+            writePrometheusFile();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to sample the run metrics: {}", e.getMessage(), e);
+        }
+    }
+
+    private static long etaSeconds(long completed, long expected) {
+        if (throughput <= 0 || expected <= completed) {
+            return expected <= completed ? 0 : -1;
+        }
+        return (long) Math.ceil((expected - completed) / throughput);
+    }
+
+    private static void writePrometheusFile() {
+        if (prometheusFile == null) {
+            return;
+        }
+        StringBuilder out = new StringBuilder();
+        out.append("# HELP redeployer_rest_call_duration_ms Latency of REST calls by operation and status.\n");
+        out.append("# TYPE redeployer_rest_call_duration_ms histogram\n");
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(latencies).entrySet()) {
+            String[] key = entry.getKey().split("\\|", 2);
+            String labels = "operation=\"" + key[0] + "\",status=\"" + key[1] + "\"";
+            LatencyHistogram histogram = entry.getValue();
+            for (int i = 0; i < LatencyHistogram.BUCKET_BOUNDS_MS.length; i++) {
+                out.append("redeployer_rest_call_duration_ms_bucket{").append(labels).append(",le=\"")
+                        .append(LatencyHistogram.BUCKET_BOUNDS_MS[i]).append("\"} ")
+                        .append(histogram.getCumulativeCount(i)).append('\n');
+            }
+            out.append("redeployer_rest_call_duration_ms_bucket{").append(labels).append(",le=\"+Inf\"} ")
+                    .append(histogram.getCount()).append('\n');
+            out.append("redeployer_rest_call_duration_ms_sum{").append(labels).append("} ")
+                    .append(histogram.getSumMs()).append('\n');
+            out.append("redeployer_rest_call_duration_ms_count{").append(labels).append("} ")
+                    .append(histogram.getCount()).append('\n');
+        }
+
+        out.append("# HELP redeployer_rest_response_bytes_total Response bytes by operation, received and decoded.\n");
+        out.append("# TYPE redeployer_rest_response_bytes_total counter\n");
+        for (Map.Entry<String, TransferCounter> entry : new TreeMap<>(transfers).entrySet()) {
+            String operation = "operation=\"" + entry.getKey() + "\"";
+            out.append("redeployer_rest_response_bytes_total{").append(operation).append(",stage=\"wire\"} ")
+                    .append(entry.getValue().wireBytes.sum()).append('\n');
+            out.append("redeployer_rest_response_bytes_total{").append(operation).append(",stage=\"decoded\"} ")
+                    .append(entry.getValue().decodedBytes.sum()).append('\n');
+        }
+        out.append("# HELP redeployer_rest_response_bytes_saved_total Bytes not transferred thanks to compression.\n");
+        out.append("# TYPE redeployer_rest_response_bytes_saved_total counter\n");
+        for (Map.Entry<String, TransferCounter> entry : new TreeMap<>(transfers).entrySet()) {
+            out.append("redeployer_rest_response_bytes_saved_total{operation=\"").append(entry.getKey())
+                    .append("\"} ").append(entry.getValue().savedBytes()).append('\n');
+        }
+
+        out.append("# HELP redeployer_apis_total APIs processed per tenant by outcome.\n");
+        out.append("# TYPE redeployer_apis_total counter\n");
+        for (TenantProgress progress : new TreeMap<>(tenants).values()) {
+            String tenant = "tenant=\"" + progress.getTenant() + "\"";
+            if (!progress.getWorkUnit().equals(progress.getTenant())) {
+                tenant += ",unit=\"" + progress.getWorkUnit() + "\"";
+            }
+            out.append("redeployer_apis_total{").append(tenant).append(",outcome=\"redeployed\"} ")
+                    .append(progress.getRedeployedApis()).append('\n');
+            out.append("redeployer_apis_total{").append(tenant).append(",outcome=\"failed\"} ")
+                    .append(progress.getFailedApis()).append('\n');
+            out.append("redeployer_apis_total{").append(tenant).append(",outcome=\"skipped\"} ")
+                    .append(progress.getSkippedApis()).append('\n');
+        }
+
+        long completed = completedApis();
+        long expected = expectedApis();
+        out.append("# TYPE redeployer_apis_expected gauge\n");
+        out.append("redeployer_apis_expected ").append(expected).append('\n');
+        out.append("# TYPE redeployer_throughput_apis_per_second gauge\n");
+        out.append("redeployer_throughput_apis_per_second ").append(String.format("%.3f", throughput)).append('\n');
+        out.append("# TYPE redeployer_eta_seconds gauge\n");
+        out.append("redeployer_eta_seconds ").append(etaSeconds(completed, expected)).append('\n');
+        writeAtomically(prometheusFile, out.toString());
+    }
+
+    private static void writeSummaryFile() {
+        if (summaryFile == null) {
+            return;
+        }
+        JSONObject summary = new JSONObject();
+        summary.put("elapsedMs", System.currentTimeMillis() - startTime);
+        summary.put("completedApis", completedApis());
+        summary.put("expectedApis", expectedApis());
+
+        JSONArray tenantSummaries = new JSONArray();
+        for (TenantProgress progress : new TreeMap<>(tenants).values()) {
+            JSONObject tenant = new JSONObject();
+            tenant.put("tenant", progress.getTenant());
+            tenant.put("unit", progress.getWorkUnit());
+            tenant.put("redeployed", progress.getRedeployedApis());
+            tenant.put("failed", progress.getFailedApis());
+            tenant.put("skipped", progress.getSkippedApis());
+            tenantSummaries.add(tenant);
+        }
+        summary.put("tenants", tenantSummaries);
+
+        JSONArray calls = new JSONArray();
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(latencies).entrySet()) {
+            String[] key = entry.getKey().split("\\|", 2);
+            LatencyHistogram histogram = entry.getValue();
+            JSONObject call = new JSONObject();
+            call.put("operation", key[0]);
+            call.put("status", key[1]);
+            call.put("count", histogram.getCount());
+            call.put("meanMs", histogram.getCount() > 0 ? histogram.getSumMs() / histogram.getCount() : 0);
+            call.put("p50Ms", histogram.getPercentileMs(50));
+            call.put("p90Ms", histogram.getPercentileMs(90));
+            call.put("p99Ms", histogram.getPercentileMs(99));
+            calls.add(call);
+        }
+        summary.put("calls", calls);
+
+        JSONArray responses = new JSONArray();
+        for (Map.Entry<String, TransferCounter> entry : new TreeMap<>(transfers).entrySet()) {
+            TransferCounter counter = entry.getValue();
+            JSONObject response = new JSONObject();
+            response.put("operation", entry.getKey());
+            response.put("count", counter.responses.sum());
+            response.put("compressed", counter.compressedResponses.sum());
+            response.put("wireBytes", counter.wireBytes.sum());
+            response.put("decodedBytes", counter.decodedBytes.sum());
+            response.put("savedBytes", counter.savedBytes());
+            responses.add(response);
+        }
+        summary.put("responses", responses);
+        writeAtomically(summaryFile, summary.toJSONString());
+        logger.info("Run metrics summary written to {}", summaryFile);
+    }
+
+    private static void writeAtomically(String file, String content) {
+        Path target = Paths.get(file).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(target.getParent());
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(content);
+            }
+            // Scrapers never see a partially written file
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Failed to write metrics to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static final class TransferCounter {
+        private final LongAdder responses = new LongAdder();
+        private final LongAdder compressedResponses = new LongAdder();
+        private final LongAdder wireBytes = new LongAdder();
+        private final LongAdder decodedBytes = new LongAdder();
+
+        void record(long wire, long decoded, boolean compressed) {
+            responses.increment();
+            if (compressed) {
+                compressedResponses.increment();
+            }
+            wireBytes.add(wire);
+            decodedBytes.add(decoded);
+        }
+
+        long savedBytes() {
+            return Math.max(0, decodedBytes.sum() - wireBytes.sum());
+        }
+    }
+}
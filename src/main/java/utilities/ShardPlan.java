@@ -0,0 +1,148 @@
+package utilities;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits the work of a redeployment across several runner processes started with {@code --shard i/N}. Every
+ * process computes the same work units from the same tenants file: one unit per tenant, except for the tenants
+ * listed to be split, which get one unit per shard covering a slice of their APIs. Each unit is owned by one shard,
+ * chosen by a stable hash of its ID, so the assignment doesn't depend on the order of the tenants file.
+ */
+public class ShardPlan {
+
+    private final int shardIndex;
+    private final int shardCount;
+
+    /**
+     * A tenant, or a slice of the APIs of a tenant, processed as one piece of work.
+     */
+    public static final class WorkUnit {
+        private final String tenant;
+        private final int slice;
+        private final int sliceCount;
+        private final int owner;
+
+        WorkUnit(String tenant, int slice, int sliceCount, int owner) {
+            this.tenant = tenant;
+            this.slice = slice;
+            this.sliceCount = sliceCount;
+            this.owner = owner;
+        }
+
+        public String getTenant() {
+            return tenant;
+        }
+
+        /**
+         * Returns the ID of the unit, which is the tenant itself unless the tenant is split, e.g. {@code abc.com#2/4}.
+         */
+        public String getId() {
+            return sliceCount > 1 ? tenant + "#" + slice + "/" + sliceCount : tenant;
+        }
+
+        public int getSliceCount() {
+            return sliceCount;
+        }
+
+        public int getOwner() {
+            return owner;
+        }
+
+        /**
+         * Returns whether the API belongs to this unit.
+         */
+        public boolean includes(String apiId) {
+            return sliceCount <= 1 || shardOf(apiId, sliceCount) == slice;
+        }
+
+        @Override
+        public String toString() {
+            return getId();
+        }
+    }
+
+    public ShardPlan(int shardIndex, int shardCount) {
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("Invalid shard " + shardIndex + "/" + shardCount +
+                    ", expected i/N with 0 <= i < N");
+        }
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * Parses a shard specification of the form {@code i/N}, where shards are numbered from 0.
+     */
+    public static ShardPlan parse(String spec) {
+        String[] parts = spec.split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid shard " + spec + ", expected i/N");
+        }
+        return new ShardPlan(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+    }
+
+    public static ShardPlan single() {
+        return new ShardPlan(0, 1);
+    }
+
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public boolean isSharded() {
+        return shardCount > 1;
+    }
+
+    /**
+     * Returns the work units of all shards, the units owned by this shard first and then the units of the
+     * following shards in turn, which is the order in which idle workers take over unclaimed work.
+     */
+    public List<WorkUnit> workUnits(Collection<String> tenants, Set<String> splitTenants) {
+        List<WorkUnit> units = new ArrayList<>();
+        for (String tenant : tenants) {
+            if (shardCount > 1 && splitTenants.contains(tenant)) {
+                for (int slice = 0; slice < shardCount; slice++) {
+                    units.add(new WorkUnit(tenant, slice, shardCount, slice));
+                }
+            } else {
+                units.add(new WorkUnit(tenant, 0, 1, shardOf(tenant, shardCount)));
+            }
+        }
+        units.sort((a, b) -> Integer.compare(distance(a.owner), distance(b.owner)));
+        return units;
+    }
+
+    public boolean owns(WorkUnit unit) {
+        return unit.owner == shardIndex;
+    }
+
+    private int distance(int owner) {
+        return Math.floorMod(owner - shardIndex, shardCount);
+    }
+
+    /**
+     * Maps a key to a shard with a hash that is stable across processes and JVM versions.
+     */
+    static int shardOf(String key, int count) {
+        // FNV-1a over the UTF-8 bytes spreads similar tenant names and API IDs better than String.hashCode
+        int hash = 0x811c9dc5;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x01000193;
+        }
+        return Math.floorMod(hash, count);
+    }
+
+    @Override
+    public String toString() {
+        return shardIndex + "/" + shardCount;
+    }
+}
@@ -0,0 +1,167 @@
+package utilities;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index of the state of every API at the time it was last redeployed, keyed by tenant and API ID. It is used by
+ * incremental runs to redeploy only the APIs that changed since then, or that were never redeployed.
+ *
+ * <p>The index is kept in a compact binary file that is loaded once at startup and rewritten when the run
+ * finishes. Each tenant is written once, followed by the API ID, the last updated time and the last deployed
+ * revision ID of each of its APIs.</p>
+ */
+public class StateIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(StateIndex.class);
+
+    private static final int MAGIC = 0x52445349;
+    private static final int VERSION = 1;
+
+    /**
+     * State of an API when it was last redeployed.
+     */
+    public static final class ApiState {
+        private final String lastUpdatedTime;
+        private final String revisionId;
+
+        ApiState(String lastUpdatedTime, String revisionId) {
+            this.lastUpdatedTime = lastUpdatedTime;
+            this.revisionId = revisionId;
+        }
+
+        public String getLastUpdatedTime() {
+            return lastUpdatedTime;
+        }
+
+        public String getRevisionId() {
+            return revisionId;
+        }
+    }
+
+    private final String path;
+    private final ConcurrentMap<String, ConcurrentMap<String, ApiState>> tenants = new ConcurrentHashMap<>();
+
+    private StateIndex(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Loads the index from the given path. A missing or unreadable file results in an empty index, so every API is
+     * treated as changed.
+     */
+    public static StateIndex load(String path) {
+        StateIndex index = new StateIndex(path);
+        Path file = Paths.get(path);
+        if (!Files.exists(file)) {
+            logger.info("No state index found at {}, all APIs are treated as changed", path);
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported state index format");
+            }
+            int apis = 0;
+            int tenantCount = in.readInt();
+            for (int i = 0; i < tenantCount; i++) {
+                String tenant = in.readUTF();
+                int apiCount = in.readInt();
+                ConcurrentMap<String, ApiState> states = new ConcurrentHashMap<>(Math.max(16, apiCount * 4 / 3 + 1));
+                for (int j = 0; j < apiCount; j++) {
+                    String apiId = in.readUTF();
+                    states.put(apiId, new ApiState(emptyToNull(in.readUTF()), emptyToNull(in.readUTF())));
+                }
+                index.tenants.put(tenant, states);
+                apis += apiCount;
+            }
+            logger.info("Loaded the state of {} APIs in {} tenants from {}", apis, tenantCount, path);
+        } catch (IOException e) {
+            logger.warn("Ignoring the unreadable state index {}, all APIs are treated as changed: {}", path,
+                    e.getMessage());
+            index.tenants.clear();
+        }
+        return index;
+    }
+
+    /**
+     * Returns the last updated time of an API as listed by the Publisher, or null if the listing doesn't include it.
+     */
+    public static String lastUpdatedTime(JSONObject apiDetails) {
+        Object value = apiDetails.get("lastUpdatedTime");
+        if (value == null) {
+            value = apiDetails.get("updatedTime");
+        }
+        return value != null ? value.toString() : null;
+    }
+
+    public ApiState getState(String tenant, String apiId) {
+        Map<String, ApiState> states = tenants.get(tenant);
+        return states != null ? states.get(apiId) : null;
+    }
+
+    /**
+     * Returns whether the API has not been updated since it was last redeployed. APIs without a last updated time
+     * are always treated as changed.
+     */
+    public boolean isUnchanged(String tenant, String apiId, String lastUpdatedTime) {
+        ApiState state = getState(tenant, apiId);
+        return lastUpdatedTime != null && state != null && lastUpdatedTime.equals(state.getLastUpdatedTime());
+    }
+
+    public void update(String tenant, String apiId, String lastUpdatedTime, String revisionId) {
+        tenants.computeIfAbsent(tenant, key -> new ConcurrentHashMap<>())
+                .put(apiId, new ApiState(lastUpdatedTime, revisionId));
+    }
+
+    /**
+     * Writes the index to a temporary file that then replaces the previous index, so an interrupted write never
+     * leaves a truncated index behind.
+     */
+    public void save() throws IOException {
+        Path target = Paths.get(path).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.createDirectories(target.getParent());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(tenants.size());
+            for (Map.Entry<String, ConcurrentMap<String, ApiState>> tenant : tenants.entrySet()) {
+                // Taken once, so the count matches the entries written even if the map is still being updated
+                List<Map.Entry<String, ApiState>> states = new ArrayList<>(tenant.getValue().entrySet());
+                out.writeUTF(tenant.getKey());
+                out.writeInt(states.size());
+                for (Map.Entry<String, ApiState> entry : states) {
+                    ApiState state = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(nullToEmpty(state.getLastUpdatedTime()));
+                    out.writeUTF(nullToEmpty(state.getRevisionId()));
+                }
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+}
@@ -0,0 +1,28 @@
+package utilities;
+
+/**
+ * Progress counters of a single tenant, reported by {@link RunMetrics}.
+ */
+public interface TenantProgress {
+
+    String getTenant();
+
+    /**
+     * Returns the ID of the work unit, which differs from the tenant when the APIs of the tenant are split across
+     * the shards of a run.
+     */
+    default String getWorkUnit() {
+        return getTenant();
+    }
+
+    /**
+     * Returns the number of APIs the Publisher reported for the tenant, or -1 if not known yet.
+     */
+    long getExpectedApis();
+
+    int getRedeployedApis();
+
+    int getFailedApis();
+
+    int getSkippedApis();
+}
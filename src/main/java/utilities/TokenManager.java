@@ -0,0 +1,176 @@
+package utilities;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the access token of a single tenant valid for the whole redeployment. The expiry reported by the token
+ * endpoint is recorded and the token is refreshed in the background before it lapses. Concurrent callers that
+ * need a new token share one in-flight refresh instead of each calling the token endpoint.
+ */
+public class TokenManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenManager.class);
+
+    // Tokens are treated as expired slightly early to allow for clock skew and in-flight requests
+    private static final long EXPIRY_SKEW_MS = 5000;
+    private static final long MAX_REFRESH_MARGIN_MS = 60000;
+
+    private static final ScheduledExecutorService REFRESH_EXECUTOR = createRefreshExecutor();
+
+    private final String tokenUrl;
+    private final String clientId;
+    private final String clientSecret;
+
+    private volatile String accessToken;
+    private volatile long expiresAt;
+    private CompletableFuture<String> refreshInFlight;
+    private ScheduledFuture<?> scheduledRefresh;
+    private boolean closed;
+
+    /**
+     * A REST call that is made with the current access token.
+     */
+    public interface AuthorizedCall<T> {
+        T call(String accessToken) throws Exception;
+    }
+
+    public TokenManager(String tokenUrl, String clientId, String clientSecret) {
+        this.tokenUrl = tokenUrl;
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+    }
+
+    private static ScheduledExecutorService createRefreshExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(2, new NamedThreadFactory("token-refresh"));
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Returns a valid access token, obtaining a new one if the current token is missing or about to expire.
+     *
+     * @throws IllegalStateException if a token could not be obtained
+     */
+    public String getAccessToken() {
+        String token = accessToken;
+        if (token != null && System.currentTimeMillis() < expiresAt - EXPIRY_SKEW_MS) {
+            return token;
+        }
+        return await(refresh(token));
+    }
+
+    /**
+     * Makes a call with the current access token. If the call is rejected with HTTP 401, the token is refreshed
+     * and the call is retried once.
+     */
+    public <T> T call(AuthorizedCall<T> call) throws Exception {
+        String token = getAccessToken();
+        try {
+            return call.call(token);
+        } catch (UnauthorizedException e) {
+            logger.warn("Access token for consumer key {} was rejected, refreshing the token and retrying: {}",
+                    clientId, e.getMessage());
+            return call.call(await(refresh(token)));
+        }
+    }
+
+    /**
+     * Forces a refresh if the given token is still the current one, e.g. after it was rejected by the server.
+     */
+    public String invalidate(String staleToken) {
+        return await(refresh(staleToken));
+    }
+
+    /**
+     * Stops the background refresh of the token.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+    }
+
+    private synchronized CompletableFuture<String> refresh(String staleToken) {
+        if (refreshInFlight != null) {
+            return refreshInFlight;
+        }
+        String current = accessToken;
+        if (current != null && !current.equals(staleToken) && System.currentTimeMillis() < expiresAt - EXPIRY_SKEW_MS) {
+            // Another caller has already replaced the stale token
+            return CompletableFuture.completedFuture(current);
+        }
+        CompletableFuture<String> refresh = CompletableFuture.supplyAsync(this::fetchToken, REFRESH_EXECUTOR);
+        refreshInFlight = refresh;
+        refresh.whenComplete((token, error) -> clearRefresh(refresh));
+        return refresh;
+    }
+
+    private synchronized void clearRefresh(CompletableFuture<String> refresh) {
+        if (refreshInFlight == refresh) {
+            refreshInFlight = null;
+        }
+    }
+
+    private String fetchToken() {
+        JSONObject tokenDetails = RestRequests.getToken(tokenUrl, clientId, clientSecret);
+        if (tokenDetails == null || !(tokenDetails.get("access_token") instanceof String)) {
+            throw new IllegalStateException("Failed to obtain access token for consumerKey: " + clientId);
+        }
+        long lifetimeMs = tokenDetails.get("expires_in") instanceof Number
+                ? ((Number) tokenDetails.get("expires_in")).longValue() * 1000 : -1;
+        String token = (String) tokenDetails.get("access_token");
+        synchronized (this) {
+            accessToken = token;
+            expiresAt = lifetimeMs > 0 ? System.currentTimeMillis() + lifetimeMs : Long.MAX_VALUE;
+            scheduleRefresh(lifetimeMs);
+        }
+        logger.info("Obtained access token for consumer key {} valid for {} seconds", clientId,
+                lifetimeMs > 0 ? lifetimeMs / 1000 : "unlimited");
+        return token;
+    }
+
+    private void scheduleRefresh(long lifetimeMs) {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+            scheduledRefresh = null;
+        }
+        if (closed || lifetimeMs <= 0) {
+            return;
+        }
+        long delay = lifetimeMs - Math.min(MAX_REFRESH_MARGIN_MS, lifetimeMs / 5);
+        String token = accessToken;
+        scheduledRefresh = REFRESH_EXECUTOR.schedule(() -> {
+            logger.debug("Refreshing access token for consumer key {} before it expires", clientId);
+            refresh(token).exceptionally(error -> {
+                logger.warn("Background refresh of the access token for consumer key {} failed: {}", clientId,
+                        error.getMessage());
+                return null;
+            });
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static String await(CompletableFuture<String> refresh) {
+        try {
+            return refresh.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package utilities;
+
+/**
+ * Thrown by {@link RestRequests} when a call made with a bearer token is rejected with HTTP 401, so that the
+ * caller can refresh the token and retry the call.
+ */
+public class UnauthorizedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UnauthorizedException(String message) {
+        super(message);
+    }
+}
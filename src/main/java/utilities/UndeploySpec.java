@@ -0,0 +1,94 @@
+package utilities;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable view of the gateway environments listed in {@code revisions.json} that have to be undeployed. The file
+ * is read and validated once at startup, and the undeploy request body is encoded once and shared by all workers.
+ */
+public final class UndeploySpec {
+
+    private final List<String> environmentNames;
+    private final Set<String> environmentNameSet;
+    private final byte[] requestBody;
+
+    private UndeploySpec(List<String> environmentNames, byte[] requestBody) {
+        this.environmentNames = Collections.unmodifiableList(environmentNames);
+        this.environmentNameSet = new HashSet<>(environmentNames);
+        this.requestBody = requestBody;
+    }
+
+    /**
+     * Loads and validates the undeploy specification from the given file.
+     *
+     * @throws IllegalArgumentException if the file is not a non-empty array of gateway environment objects
+     */
+    public static UndeploySpec load(String path) throws IOException {
+        try (Reader reader = new FileReader(path)) {
+            return parse(new JSONParser().parse(reader), path);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Invalid JSON in " + path + ": " + e, e);
+        }
+    }
+
+    private static UndeploySpec parse(Object json, String source) {
+        if (!(json instanceof JSONArray) || ((JSONArray) json).isEmpty()) {
+            throw new IllegalArgumentException(source + " must contain a non-empty JSON array of gateway environments");
+        }
+        JSONArray environments = (JSONArray) json;
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < environments.size(); i++) {
+            Object entry = environments.get(i);
+            if (!(entry instanceof JSONObject)) {
+                throw new IllegalArgumentException("Entry " + i + " in " + source + " is not a JSON object");
+            }
+            JSONObject environment = (JSONObject) entry;
+            Object name = environment.get("name");
+            if (!(name instanceof String) || ((String) name).trim().isEmpty()) {
+                throw new IllegalArgumentException("Entry " + i + " in " + source + " is missing the 'name' property");
+            }
+            Object vhost = environment.get("vhost");
+            if (vhost != null && !(vhost instanceof String)) {
+                throw new IllegalArgumentException("Entry " + i + " in " + source + " has a non-string 'vhost'");
+            }
+            Object displayOnDevportal = environment.get("displayOnDevportal");
+            if (displayOnDevportal != null && !(displayOnDevportal instanceof Boolean)) {
+                throw new IllegalArgumentException("Entry " + i + " in " + source +
+                        " has a non-boolean 'displayOnDevportal'");
+            }
+            names.add((String) name);
+        }
+        return new UndeploySpec(names, environments.toJSONString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public List<String> getEnvironmentNames() {
+        return environmentNames;
+    }
+
+    /**
+     * Returns whether the gateway environment with the given name is undeployed by this specification.
+     */
+    public boolean covers(String environmentName) {
+        return environmentNameSet.contains(environmentName);
+    }
+
+    /**
+     * Returns the encoded undeploy request body. The array is shared and must not be modified.
+     */
+    byte[] getRequestBody() {
+        return requestBody;
+    }
+}
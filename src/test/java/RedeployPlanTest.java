@@ -0,0 +1,98 @@
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import utilities.ApiRevision;
+import utilities.GatewayDeployment;
+import utilities.UndeploySpec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RedeployPlanTest {
+
+    private static final GatewayDeployment DEFAULT = new GatewayDeployment("Default", "localhost", true);
+    private static final GatewayDeployment EXTERNAL = new GatewayDeployment("External", "api.example.com", false);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private UndeploySpec undeployExternal;
+
+    @Before
+    public void loadUndeploySpec() throws IOException {
+        File file = folder.newFile("revisions.json");
+        Files.write(file.toPath(), "[{\"name\": \"External\", \"displayOnDevportal\": false}]"
+                .getBytes(StandardCharsets.UTF_8));
+        undeployExternal = UndeploySpec.load(file.getPath());
+    }
+
+    @Test
+    public void planUndeploysListedEnvironmentsAndKeepsTheOthers() {
+        RedeployPlan plan = RedeployPlan.build(Arrays.asList(
+                new ApiRevision("rev-1", Arrays.asList(DEFAULT, EXTERNAL), 100),
+                new ApiRevision("rev-2", Collections.singletonList(EXTERNAL), 200),
+                new ApiRevision("rev-3", Collections.singletonList(DEFAULT), 300)), undeployExternal);
+
+        assertEquals(Arrays.asList("rev-1", "rev-2"), plan.getRevisionsToUndeploy());
+        // Default is deployed by two revisions, and the new revision is deployed to it once
+        assertEquals(Collections.singletonList(DEFAULT), plan.getRemainingDeployments());
+        assertEquals(3, plan.getRevisionCount());
+    }
+
+    @Test
+    public void revisionsNotDeployedAfterTheUndeploymentArePrunableOldestFirst() {
+        RedeployPlan plan = RedeployPlan.build(Arrays.asList(
+                new ApiRevision("rev-3", Collections.emptyList(), 300),
+                new ApiRevision("rev-1", Collections.singletonList(EXTERNAL), 100),
+                new ApiRevision("rev-2", Collections.singletonList(DEFAULT), 200),
+                new ApiRevision("rev-0", Collections.emptyList(), 50)), undeployExternal);
+
+        assertEquals(Arrays.asList("rev-0", "rev-1", "rev-3"), plan.getPrunableRevisions());
+    }
+
+    @Test
+    public void revisionsWithoutCreationTimeKeepTheirListedOrder() {
+        RedeployPlan plan = RedeployPlan.build(Arrays.asList(
+                new ApiRevision("rev-b", Collections.emptyList()),
+                new ApiRevision("rev-a", Collections.emptyList())), undeployExternal);
+
+        assertEquals(Arrays.asList("rev-b", "rev-a"), plan.getPrunableRevisions());
+    }
+
+    @Test
+    public void revisionsArePrunedToMakeRoomForTheNewRevision() {
+        RedeployPlan plan = RedeployPlan.build(Arrays.asList(
+                new ApiRevision("rev-1", Collections.singletonList(EXTERNAL), 100),
+                new ApiRevision("rev-2", Collections.emptyList(), 200),
+                new ApiRevision("rev-3", Collections.singletonList(DEFAULT), 300),
+                new ApiRevision("rev-4", Collections.singletonList(DEFAULT), 400)), undeployExternal);
+
+        assertTrue(plan.getRevisionsToPrune(10).isEmpty());
+        assertTrue(plan.getRevisionsToPrune(5).isEmpty());
+        assertEquals(Collections.singletonList("rev-1"), plan.getRevisionsToPrune(4));
+        assertEquals(Arrays.asList("rev-1", "rev-2"), plan.getRevisionsToPrune(3));
+        // Revisions that stay deployed are never pruned, even if the maximum is exceeded
+        assertEquals(Arrays.asList("rev-1", "rev-2"), plan.getRevisionsToPrune(1));
+        assertEquals(Arrays.asList("rev-1", "rev-2"), plan.getRevisionsToPrune(0));
+    }
+
+    @Test
+    public void planWithoutRevisionsIsEmpty() {
+        List<ApiRevision> revisions = Collections.emptyList();
+        RedeployPlan plan = RedeployPlan.build(revisions, undeployExternal);
+
+        assertTrue(plan.getRevisionsToUndeploy().isEmpty());
+        assertTrue(plan.getRemainingDeployments().isEmpty());
+        assertTrue(plan.getRevisionsToPrune(1).isEmpty());
+        assertEquals(0, plan.getRevisionCount());
+    }
+}
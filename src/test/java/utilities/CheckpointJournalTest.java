@@ -0,0 +1,74 @@
+package utilities;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CheckpointJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resumedJournalHasTheLastStepOfEveryApi() throws IOException {
+        String path = new File(folder.getRoot(), "checkpoint.journal").getPath();
+        try (CheckpointJournal journal = new CheckpointJournal(path, false)) {
+            journal.record("abc.com", "api-1", CheckpointJournal.Step.UNDEPLOYED, null);
+            journal.record("abc.com", "api-1", CheckpointJournal.Step.REVISION_CREATED, "rev-1");
+            journal.recordDurably("abc.com", "api-2", CheckpointJournal.Step.SKIPPED, null);
+            journal.record("xyz.com", "api-1", CheckpointJournal.Step.DEPLOYED, "rev-2");
+        }
+
+        try (CheckpointJournal journal = new CheckpointJournal(path, true)) {
+            CheckpointJournal.Checkpoint created = journal.getCheckpoint("abc.com", "api-1");
+            assertEquals(CheckpointJournal.Step.REVISION_CREATED, created.getStep());
+            assertEquals("rev-1", created.getRevisionId());
+            assertEquals(CheckpointJournal.Step.SKIPPED, journal.getCheckpoint("abc.com", "api-2").getStep());
+            assertNull(journal.getCheckpoint("abc.com", "api-2").getRevisionId());
+            assertEquals("rev-2", journal.getCheckpoint("xyz.com", "api-1").getRevisionId());
+            assertNull(journal.getCheckpoint("xyz.com", "api-2"));
+        }
+    }
+
+    @Test
+    public void partiallyWrittenLastLineIsIgnored() throws IOException {
+        String path = new File(folder.getRoot(), "checkpoint.journal").getPath();
+        try (CheckpointJournal journal = new CheckpointJournal(path, false)) {
+            journal.record("abc.com", "api-1", CheckpointJournal.Step.DEPLOYED, "rev-1");
+            journal.record("abc.com", "api-2", CheckpointJournal.Step.UNDEPLOYED, null);
+        }
+        // A crash while appending leaves a record without its last fields or line break
+        try (OutputStream out = new FileOutputStream(path, true)) {
+            out.write("abc.com\tapi-2\tREVISION_CRE".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (CheckpointJournal journal = new CheckpointJournal(path, true)) {
+            assertEquals(CheckpointJournal.Step.DEPLOYED, journal.getCheckpoint("abc.com", "api-1").getStep());
+            assertEquals(CheckpointJournal.Step.UNDEPLOYED, journal.getCheckpoint("abc.com", "api-2").getStep());
+        }
+    }
+
+    @Test
+    public void journalStartedAfreshForgetsEarlierCheckpoints() throws IOException {
+        String path = new File(folder.getRoot(), "checkpoint.journal").getPath();
+        try (CheckpointJournal journal = new CheckpointJournal(path, false)) {
+            journal.record("abc.com", "api-1", CheckpointJournal.Step.DEPLOYED, "rev-1");
+        }
+
+        try (CheckpointJournal journal = new CheckpointJournal(path, false)) {
+            assertNull(journal.getCheckpoint("abc.com", "api-1"));
+        }
+        try (CheckpointJournal journal = new CheckpointJournal(path, true)) {
+            assertNull(journal.getCheckpoint("abc.com", "api-1"));
+        }
+    }
+}
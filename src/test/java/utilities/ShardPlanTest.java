@@ -0,0 +1,100 @@
+package utilities;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShardPlanTest {
+
+    private static final List<String> TENANTS = Arrays.asList("abc.com", "xyz.com", "foo.com", "bar.com", "baz.com",
+            "qux.com", "large.com");
+    private static final Set<String> SPLIT_TENANTS = Collections.singleton("large.com");
+
+    @Test
+    public void everyUnitIsOwnedByExactlyOneShard() {
+        int shardCount = 3;
+        Map<String, Integer> owners = new HashMap<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            ShardPlan plan = new ShardPlan(shard, shardCount);
+            List<ShardPlan.WorkUnit> units = plan.workUnits(TENANTS, SPLIT_TENANTS);
+            assertEquals(TENANTS.size() - 1 + shardCount, units.size());
+            for (ShardPlan.WorkUnit unit : units) {
+                if (plan.owns(unit) && owners.put(unit.getId(), shard) != null) {
+                    fail("The work unit " + unit + " is owned by more than one shard");
+                }
+            }
+        }
+        assertEquals(TENANTS.size() - 1 + shardCount, owners.size());
+    }
+
+    @Test
+    public void ownedUnitsComeFirst() {
+        ShardPlan plan = new ShardPlan(1, 3);
+        boolean ownedUnitsDone = false;
+        for (ShardPlan.WorkUnit unit : plan.workUnits(TENANTS, SPLIT_TENANTS)) {
+            if (!plan.owns(unit)) {
+                ownedUnitsDone = true;
+            } else if (ownedUnitsDone) {
+                fail("The owned work unit " + unit + " is listed after the units of other shards");
+            }
+        }
+    }
+
+    @Test
+    public void splitTenantSlicesIncludeEveryApiOnce() {
+        List<ShardPlan.WorkUnit> units = new ShardPlan(0, 4).workUnits(Collections.singleton("large.com"),
+                SPLIT_TENANTS);
+        assertEquals(4, units.size());
+        Set<String> owners = new HashSet<>();
+        for (ShardPlan.WorkUnit unit : units) {
+            assertEquals("large.com", unit.getTenant());
+            assertEquals(4, unit.getSliceCount());
+            owners.add(String.valueOf(unit.getOwner()));
+        }
+        assertEquals(4, owners.size());
+        for (int api = 0; api < 200; api++) {
+            String apiId = "large-api-" + api;
+            assertEquals(1, units.stream().filter(unit -> unit.includes(apiId)).count());
+        }
+    }
+
+    @Test
+    public void singleShardOwnsWholeTenants() {
+        ShardPlan plan = ShardPlan.single();
+        assertFalse(plan.isSharded());
+        List<ShardPlan.WorkUnit> units = plan.workUnits(TENANTS, SPLIT_TENANTS);
+        assertEquals(TENANTS.size(), units.size());
+        for (ShardPlan.WorkUnit unit : units) {
+            assertTrue(plan.owns(unit));
+            assertEquals(unit.getTenant(), unit.getId());
+            assertTrue(unit.includes("any-api"));
+        }
+    }
+
+    @Test
+    public void parsesShardSpecification() {
+        ShardPlan plan = ShardPlan.parse("2/5");
+        assertEquals(2, plan.getShardIndex());
+        assertEquals(5, plan.getShardCount());
+        assertTrue(plan.isSharded());
+        for (String spec : new String[]{"5/5", "-1/2", "1", "a/2"}) {
+            try {
+                ShardPlan.parse(spec);
+                fail("The shard " + spec + " was accepted");
+            } catch (IllegalArgumentException expected) {
+                // NumberFormatException is an IllegalArgumentException as well
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package utilities;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StateIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void savedIndexIsLoadedAgain() throws IOException {
+        String path = new File(folder.getRoot(), "state/state.index").getPath();
+        StateIndex index = StateIndex.load(path);
+        index.update("abc.com", "api-1", "1700000000001", "rev-1");
+        index.update("abc.com", "api-2", null, null);
+        index.update("xyz.com", "api-1", "1700000000003", "rev-3");
+        index.save();
+
+        StateIndex loaded = StateIndex.load(path);
+        assertEquals("1700000000001", loaded.getState("abc.com", "api-1").getLastUpdatedTime());
+        assertEquals("rev-1", loaded.getState("abc.com", "api-1").getRevisionId());
+        assertNull(loaded.getState("abc.com", "api-2").getLastUpdatedTime());
+        assertNull(loaded.getState("abc.com", "api-2").getRevisionId());
+        assertEquals("rev-3", loaded.getState("xyz.com", "api-1").getRevisionId());
+        assertNull(loaded.getState("xyz.com", "api-2"));
+    }
+
+    @Test
+    public void apiIsUnchangedOnlyWithTheSameLastUpdatedTime() throws IOException {
+        String path = new File(folder.getRoot(), "state.index").getPath();
+        StateIndex index = StateIndex.load(path);
+        index.update("abc.com", "api-1", "1700000000001", "rev-1");
+        index.update("abc.com", "api-2", null, "rev-2");
+        index.save();
+
+        StateIndex loaded = StateIndex.load(path);
+        assertTrue(loaded.isUnchanged("abc.com", "api-1", "1700000000001"));
+        assertFalse(loaded.isUnchanged("abc.com", "api-1", "1700000000002"));
+        assertFalse(loaded.isUnchanged("abc.com", "api-1", null));
+        assertFalse(loaded.isUnchanged("abc.com", "api-2", null));
+        assertFalse(loaded.isUnchanged("abc.com", "api-3", "1700000000001"));
+    }
+
+    @Test
+    public void unreadableIndexIsLoadedEmpty() throws IOException {
+        File file = folder.newFile("state.index");
+        Files.write(file.toPath(), "not a state index".getBytes(StandardCharsets.UTF_8));
+
+        assertNull(StateIndex.load(file.getPath()).getState("abc.com", "api-1"));
+        assertNull(StateIndex.load(new File(folder.getRoot(), "missing.index").getPath())
+                .getState("abc.com", "api-1"));
+    }
+}